@@ -0,0 +1,87 @@
+package darts.lib.sql.loadtest
+
+/**
+  * Log-linear latency histogram. Values are kept with a relative
+  * precision of about 3% (32 sub-buckets per power of two), which
+  * is plenty for percentile reporting and keeps the footprint fixed
+  * no matter how many samples are recorded. Instances are not
+  * thread-safe; every worker records into its own histogram, and
+  * the histograms are merged when the run is over.
+  */
+
+final class Histogram {
+
+    import Histogram._
+
+    private val counts = new Array[Long](BucketCount)
+    private var total: Long = 0L
+    private var sum: Long = 0L
+    private var maximum: Long = 0L
+
+    def count: Long = total
+
+    def max: Long = maximum
+
+    def mean: Double =
+        if (total == 0L) 0.0 else sum.toDouble / total
+
+    def record(value: Long): Unit = {
+        val v = if (value < 0L) 0L else value
+        counts(bucketOf(v)) += 1
+        total += 1
+        sum += v
+        if (v > maximum) maximum = v
+    }
+
+    def merge(other: Histogram): Histogram = {
+        var i = 0
+        while (i < BucketCount) {
+            counts(i) += other.counts(i)
+            i += 1
+        }
+        total += other.total
+        sum += other.sum
+        if (other.maximum > maximum) maximum = other.maximum
+        this
+    }
+
+    def percentile(p: Double): Long =
+        if (total == 0L) 0L
+        else {
+            val rank = math.max(1L, math.ceil(total * p / 100.0).toLong)
+            var seen = 0L
+            var i = 0
+            while (i < BucketCount) {
+                seen += counts(i)
+                if (seen >= rank) return math.min(valueOf(i), maximum)
+                i += 1
+            }
+            maximum
+        }
+}
+
+object Histogram {
+
+    private final val SubBits = 5
+    private final val SubCount = 1 << SubBits
+    private final val BucketCount = (64 - SubBits) * SubCount
+
+    private def bucketOf(v: Long): Int =
+        if (v < SubCount) v.toInt
+        else {
+            val e = 63 - java.lang.Long.numberOfLeadingZeros(v)
+            (e - SubBits + 1) * SubCount + ((v >>> (e - SubBits)) & (SubCount - 1)).toInt
+        }
+
+    private def valueOf(bucket: Int): Long =
+        if (bucket < SubCount) bucket.toLong
+        else {
+            val e = bucket / SubCount + SubBits - 1
+            val sub = bucket % SubCount
+            val upper = ((SubCount + sub + 1).toLong << (e - SubBits)) - 1L
+            if (upper < 0L) Long.MaxValue else upper
+        }
+
+    def merged(hs: Iterable[Histogram]): Histogram =
+        hs.foldLeft(new Histogram)(_ merge _)
+}
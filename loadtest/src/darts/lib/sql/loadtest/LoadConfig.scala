@@ -0,0 +1,46 @@
+package darts.lib.sql.loadtest
+
+/**
+  * Parameters of a load test run. The operation mix is given as
+  * relative weights; `batchSize` is the number of rows written by
+  * a single batch operation. Durations are in seconds.
+  */
+
+final case class LoadConfig(
+    val threads: Int = 8,
+    val warmup: Int = 5,
+    val duration: Int = 30,
+    val reads: Int = 70,
+    val inserts: Int = 20,
+    val batches: Int = 10,
+    val batchSize: Int = 50,
+    val poolSize: Int = 8,
+    val rows: Int = 10000,
+    val url: String = "jdbc:h2:mem:loadtest;DB_CLOSE_DELAY=-1") {
+
+    def totalWeight: Int = reads + inserts + batches
+
+    override def toString: String =
+        "threads=" + threads + ", pool=" + poolSize + ", warmup=" + warmup + "s, duration=" + duration +
+            "s, mix=" + reads + "/" + inserts + "/" + batches + ", batch-size=" + batchSize + ", rows=" + rows
+}
+
+object LoadConfig {
+
+    def parse(args: Seq[String]): LoadConfig =
+        args.foldLeft(LoadConfig()) { (config, arg) =>
+            arg.stripPrefix("--").split("=", 2) match {
+                case Array("threads", v) => config.copy(threads = v.toInt)
+                case Array("warmup", v) => config.copy(warmup = v.toInt)
+                case Array("duration", v) => config.copy(duration = v.toInt)
+                case Array("reads", v) => config.copy(reads = v.toInt)
+                case Array("inserts", v) => config.copy(inserts = v.toInt)
+                case Array("batches", v) => config.copy(batches = v.toInt)
+                case Array("batch-size", v) => config.copy(batchSize = v.toInt)
+                case Array("pool-size", v) => config.copy(poolSize = v.toInt)
+                case Array("rows", v) => config.copy(rows = v.toInt)
+                case Array("url", v) => config.copy(url = v)
+                case _ => throw new IllegalArgumentException("unrecognized option: " + arg)
+            }
+        }
+}
@@ -0,0 +1,152 @@
+package darts.lib.sql.loadtest
+
+import java.util.concurrent.{ConcurrentLinkedQueue, CountDownLatch, ThreadLocalRandom}
+
+import darts.lib.sql._
+import org.h2.jdbcx.JdbcConnectionPool
+
+import scala.collection.JavaConverters._
+
+/**
+  * Session factory, which records the time spent in `getConnection`,
+  * i.e., the time a caller had to wait for the pool to hand out a
+  * connection. Waits are only recorded while `recording` is set, so
+  * that the warm-up phase does not distort the figures.
+  */
+
+final class TimedSessionFactory(protected val dataSource: DataSource)
+    extends DataSourceSessionFactory {
+
+    @volatile var recording: Boolean = false
+
+    private val histograms = new ConcurrentLinkedQueue[Histogram]
+
+    private val local = new ThreadLocal[Histogram] {
+        override def initialValue(): Histogram = {
+            val h = new Histogram
+            histograms.add(h)
+            h
+        }
+    }
+
+    override protected def openConnection: Connection = {
+        val start = System.nanoTime
+        val cnx = super.openConnection
+        if (recording) local.get.record(System.nanoTime - start)
+        cnx
+    }
+
+    def poolWaits: Histogram =
+        Histogram.merged(histograms.asScala)
+}
+
+final class Worker(val workload: Workload, val gate: CountDownLatch, val measureFrom: Long, val measureUntil: Long)
+    extends Thread {
+
+    val reads = new Histogram
+    val inserts = new Histogram
+    val batches = new Histogram
+
+    @volatile var errors: Long = 0L
+
+    override def run(): Unit = {
+        val config = workload.config
+        val random = ThreadLocalRandom.current()
+        gate.await()
+        var now = System.nanoTime
+        while (now < measureUntil) {
+            val pick = random.nextInt(config.totalWeight)
+            val histogram =
+                if (pick < config.reads) reads
+                else if (pick < config.reads + config.inserts) inserts
+                else batches
+            try {
+                if (histogram eq reads) workload.read(random)
+                else if (histogram eq inserts) workload.insert(random)
+                else workload.batch(random)
+                val done = System.nanoTime
+                if (now >= measureFrom) histogram.record(done - now)
+                now = done
+            } catch {
+                case e: Exception =>
+                    if (now >= measureFrom) errors += 1
+                    now = System.nanoTime
+            }
+        }
+    }
+}
+
+/**
+  * Multi-threaded end-to-end load generator. Drives a configurable
+  * mix of single-row reads, single-row inserts and multi-row batch
+  * writes from a number of threads against an embedded H2 database
+  * via a pooling `DataSource`, and reports throughput, latency
+  * percentiles and pool wait times. Options are given as
+  * `--name=value` pairs; see `LoadConfig` for the available names.
+  */
+
+object LoadTest {
+
+    def main(args: Array[String]): Unit = {
+
+        val config = LoadConfig.parse(args)
+        val pool = JdbcConnectionPool.create(config.url, "sa", "")
+        pool.setMaxConnections(config.poolSize)
+
+        try {
+
+            val factory = new TimedSessionFactory(pool)
+            val workload = new Workload(factory, config)
+
+            workload.setUp()
+
+            val gate = new CountDownLatch(1)
+            val begin = System.nanoTime
+            val measureFrom = begin + config.warmup * 1000000000L
+            val measureUntil = measureFrom + config.duration * 1000000000L
+            val workers = Seq.fill(config.threads)(new Worker(workload, gate, measureFrom, measureUntil))
+
+            workers.foreach(_.start())
+            gate.countDown()
+
+            val pause = (measureFrom - System.nanoTime) / 1000000L
+            if (pause > 0) Thread.sleep(pause)
+            factory.recording = true
+
+            workers.foreach(_.join())
+            factory.recording = false
+
+            report(config, workers, factory.poolWaits)
+
+        } finally
+            pool.dispose()
+    }
+
+    private def report(config: LoadConfig, workers: Seq[Worker], waits: Histogram): Unit = {
+
+        val reads = Histogram.merged(workers.map(_.reads))
+        val inserts = Histogram.merged(workers.map(_.inserts))
+        val batches = Histogram.merged(workers.map(_.batches))
+        val errors = workers.map(_.errors).sum
+        val seconds = config.duration.toDouble
+
+        println(config)
+        println("%-12s %10s %10s %10s %10s %10s %10s %10s %10s".format(
+            "(micros)", "count", "ops/s", "mean", "p50", "p90", "p99", "p99.9", "max"))
+
+        def line(label: String, h: Histogram): Unit =
+            println("%-12s %10d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f".format(
+                label, h.count, h.count / seconds, h.mean / 1000.0,
+                h.percentile(50) / 1000.0, h.percentile(90) / 1000.0, h.percentile(99) / 1000.0,
+                h.percentile(99.9) / 1000.0, h.max / 1000.0))
+
+        line("read", reads)
+        line("insert", inserts)
+        line("batch", batches)
+        line("all", Histogram.merged(Seq(reads, inserts, batches)))
+        line("pool-wait", waits)
+
+        println("errors: " + errors)
+        println("rows written/s: %.1f".format((inserts.count + batches.count * config.batchSize) / seconds))
+    }
+}
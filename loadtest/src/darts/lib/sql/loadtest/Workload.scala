@@ -0,0 +1,84 @@
+package darts.lib.sql.loadtest
+
+import java.util.concurrent.ThreadLocalRandom
+
+import darts.lib.sql._
+
+/**
+  * The operations driven by the load test. Every operation obtains
+  * its own session from the factory, so that the measured latency
+  * includes the time spent waiting for a pooled connection.
+  */
+
+final class Workload(val factory: SessionFactory, val config: LoadConfig) {
+
+    import Workload._
+
+    def setUp(): Unit =
+        factory.withSession(Session.Characteristics.Default) { session =>
+            session.transactionally {
+                val stmt = session.createStatement()
+                try {
+                    stmt.execute("DROP TABLE IF EXISTS item")
+                    stmt.execute("CREATE TABLE item (id BIGINT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(64) NOT NULL, amount INT NOT NULL)")
+                } finally
+                    stmt.close()
+                var i = 0
+                while (i < config.rows) {
+                    InsertItem(Name("item-" + i), Amount(i))(session)
+                    i += 1
+                }
+            }
+        }
+
+    def read(random: ThreadLocalRandom): Unit =
+        factory.withSession(ReadOnly) { session =>
+            SelectItem(Id(1L + random.nextLong(config.rows)))(session).first
+        }
+
+    def insert(random: ThreadLocalRandom): Unit =
+        factory.withSession(Session.Characteristics.Default) { session =>
+            session.transactionally {
+                InsertItem(Name("insert-" + random.nextInt()), Amount(random.nextInt(1000)))(session)
+            }
+        }
+
+    /**
+      * Writes `batchSize` rows as a single JDBC batch (i.e., one
+      * round trip), in a transaction of its own.
+      */
+
+    /**
+      * Writes `batchSize` rows as a single JDBC batch (i.e., one
+      * round trip), in a transaction of its own.
+      */
+
+    def batch(random: ThreadLocalRandom): Unit =
+        factory.withSession(Session.Characteristics.Default) { session =>
+            session.transactionally {
+                val rows = Iterator.fill(config.batchSize)(Bindings(Name("batch-" + random.nextInt()), Amount(random.nextInt(1000))))
+                InsertItem.batch(rows, config.batchSize)(session)
+            }
+        }
+}
+
+object Workload {
+
+    final case class Item(val id: Long, val name: String, val amount: Int)
+
+    private val ReadOnly = Session.OpenMode.ReadOnly + Session.AutoCommit.Enabled
+
+    private val Id = slot[Long]("id")
+    private val Name = slot[String]("name")
+    private val Amount = slot[Int]("amount")
+
+    private val IdColumn = column[Long]("id")
+    private val NameColumn = column[String]("name")
+    private val AmountColumn = column[Int]("amount")
+
+    private val InsertItem = SimpleAction(sql"INSERT INTO item (name, amount) VALUES (${Name}, ${Amount})")
+
+    private val SelectItem = SimpleQuery(sql"SELECT id, name, amount FROM item WHERE id = ${Id}") { rs =>
+        Item(IdColumn.required(rs), NameColumn.required(rs), AmountColumn.required(rs))
+    }
+}
@@ -10,6 +10,12 @@ trait ApplyableAction {
 
     def apply(bindings: Bindings.Binding[_]*)(implicit connection: Connection): Int =
         execute(connection, Bindings(bindings: _*))
+
+    def apply(bindings: Bindings, deadline: Deadline)(implicit connection: Connection): Int =
+        execute(connection, bindings, deadline)
+
+    def batch(bindings: TraversableOnce[Bindings], batchSize: Int = 1000)(implicit connection: Connection): Array[Int] =
+        executeBatch(connection, bindings.toIterator, batchSize)
 }
 
 abstract class Action {
@@ -19,6 +25,12 @@ abstract class Action {
     protected def execute(connection: Connection, bindings: Bindings): Int =
         template.executeCommand(connection, bindings)
 
+    protected def execute(connection: Connection, bindings: Bindings, deadline: Deadline): Int =
+        template.executeCommand(connection, bindings, deadline)
+
+    protected def executeBatch(connection: Connection, bindings: Iterator[Bindings], batchSize: Int): Array[Int] =
+        template.executeBatch(connection, bindings, batchSize)
+
     override def toString: String =
         "Action(" + template + ")"
 }
@@ -0,0 +1,67 @@
+package darts.lib.sql.jdbc
+
+/**
+  * Streaming aggregation of values of type `T`: an accumulator is
+  * created by `zero`, updated by `add` for each value, and turned into
+  * the final result by `result`. Accumulators may be mutable, in which
+  * case `add` simply returns its argument; this is how the predefined
+  * aggregators avoid boxing their running totals.
+  */
+
+trait Aggregator[-T, A, +R] {
+
+    def zero: A
+
+    def add(accumulator: A, value: T): A
+
+    def result(accumulator: A): R
+}
+
+object Aggregator {
+
+    final class LongCell(var value: Long)
+
+    final class DoubleCell(var value: Double)
+
+    def apply[T, A](initial: => A)(step: (A, T) => A): Aggregator[T, A, A] = new Aggregator[T, A, A] {
+        def zero: A = initial
+        def add(accumulator: A, value: T): A = step(accumulator, value)
+        def result(accumulator: A): A = accumulator
+    }
+
+    val count: Aggregator[Any, LongCell, Long] = new Aggregator[Any, LongCell, Long] {
+        def zero: LongCell = new LongCell(0L)
+        def add(accumulator: LongCell, value: Any): LongCell = {
+            accumulator.value += 1
+            accumulator
+        }
+        def result(accumulator: LongCell): Long = accumulator.value
+    }
+
+    def sumLong[T](fn: (T) => Long): Aggregator[T, LongCell, Long] = new Aggregator[T, LongCell, Long] {
+        def zero: LongCell = new LongCell(0L)
+        def add(accumulator: LongCell, value: T): LongCell = {
+            accumulator.value += fn(value)
+            accumulator
+        }
+        def result(accumulator: LongCell): Long = accumulator.value
+    }
+
+    def sumDouble[T](fn: (T) => Double): Aggregator[T, DoubleCell, Double] = new Aggregator[T, DoubleCell, Double] {
+        def zero: DoubleCell = new DoubleCell(0.0)
+        def add(accumulator: DoubleCell, value: T): DoubleCell = {
+            accumulator.value += fn(value)
+            accumulator
+        }
+        def result(accumulator: DoubleCell): Double = accumulator.value
+    }
+
+    def max[T, K](fn: (T) => K)(implicit ordering: Ordering[K]): Aggregator[T, Option[K], Option[K]] =
+        apply[T, Option[K]](None) { (current, value) =>
+            val key = fn(value)
+            if (current.isEmpty || ordering.gt(key, current.get)) Some(key) else current
+        }
+
+    def min[T, K](fn: (T) => K)(implicit ordering: Ordering[K]): Aggregator[T, Option[K], Option[K]] =
+        max(fn)(ordering.reverse)
+}
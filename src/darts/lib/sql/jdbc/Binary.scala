@@ -0,0 +1,142 @@
+package darts.lib.sql.jdbc
+
+import java.io.{IOException, InputStream}
+import java.nio.channels.{Channels, FileChannel, ReadableByteChannel, WritableByteChannel}
+import java.nio.file.{Path, StandardOpenOption}
+import java.nio.{BufferOverflowException, ByteBuffer}
+import java.sql.ResultSet
+
+/**
+  * Binary content of known `length` to be streamed into a statement
+  * parameter (see `Type.BinaryStream`). The content is read from
+  * `channel` while the statement executes, so it is never copied into
+  * a single heap array. When read from a result set, the length is
+  * unknown (-1), and the channel is only valid while the row is
+  * current.
+  */
+
+final class BinaryStream(val channel: ReadableByteChannel, val length: Long) {
+
+    def inputStream: InputStream = Channels.newInputStream(channel)
+
+    override def toString: String = "BinaryStream(" + length + ")"
+}
+
+object BinaryStream {
+
+    def apply(channel: ReadableByteChannel, length: Long): BinaryStream =
+        new BinaryStream(channel, length)
+
+    def apply(bytes: Array[Byte]): BinaryStream =
+        new BinaryStream(Channels.newChannel(new java.io.ByteArrayInputStream(bytes)), bytes.length)
+
+    def apply(buffer: ByteBuffer): BinaryStream =
+        new BinaryStream(new BufferChannel(buffer.duplicate()), buffer.remaining())
+
+    /**
+      * Maps the file at `path` into memory, and streams its content
+      * from the mapping. The file must not be larger than 2 GiB.
+      */
+
+    def mapped(path: Path): BinaryStream = {
+        val file = FileChannel.open(path, StandardOpenOption.READ)
+        try {
+            apply(file.map(FileChannel.MapMode.READ_ONLY, 0L, file.size()))
+        } finally
+            file.close()
+    }
+
+    private final class BufferChannel(private val buffer: ByteBuffer) extends ReadableByteChannel {
+
+        @volatile private var open: Boolean = true
+
+        def read(target: ByteBuffer): Int = {
+            if (!open) throw new java.nio.channels.ClosedChannelException
+            if (!buffer.hasRemaining) -1
+            else {
+                val count = math.min(buffer.remaining(), target.remaining())
+                val slice = buffer.duplicate()
+                slice.limit(slice.position() + count)
+                target.put(slice)
+                buffer.position(buffer.position() + count)
+                count
+            }
+        }
+
+        def isOpen: Boolean = open
+
+        def close(): Unit = open = false
+    }
+}
+
+/**
+  * Streaming access to binary column values, which copies the value
+  * through a small transfer buffer into a caller-supplied target
+  * instead of materializing it as a byte array.
+  */
+
+object Binary {
+
+    final val DefaultBufferSize = 64 * 1024
+
+    /**
+      * Copies the value of column `index` into `target`, and returns
+      * the number of bytes copied, or `None`, if the value is `NULL`.
+      * I/O errors, whether reading the value or writing to `target`,
+      * are reported as `SQLException`.
+      */
+
+    def transferTo(rs: ResultSet, index: Int, target: WritableByteChannel): Option[Long] =
+        transfer(rs.getBinaryStream(index), target, DefaultBufferSize)
+
+    def transferTo(rs: ResultSet, label: String, target: WritableByteChannel): Option[Long] =
+        transfer(rs.getBinaryStream(label), target, DefaultBufferSize)
+
+    /**
+      * Reads the value of column `index` into `target` starting at its
+      * current position, and returns the number of bytes read, or
+      * `None`, if the value is `NULL`. If the value does not fit into
+      * the remaining space of `target`, `BufferOverflowException` is
+      * thrown.
+      */
+
+    def readInto(rs: ResultSet, index: Int, target: ByteBuffer): Option[Int] =
+        read(rs.getBinaryStream(index), target)
+
+    def readInto(rs: ResultSet, label: String, target: ByteBuffer): Option[Int] =
+        read(rs.getBinaryStream(label), target)
+
+    private def transfer(in: InputStream, target: WritableByteChannel, bufferSize: Int): Option[Long] =
+        if (in eq null) None
+        else try {
+            try {
+                val source = Channels.newChannel(in)
+                val buffer = ByteBuffer.allocateDirect(bufferSize)
+                var total = 0L
+                while (source.read(buffer) >= 0 || buffer.position() > 0) {
+                    buffer.flip()
+                    total += target.write(buffer)
+                    buffer.compact()
+                }
+                Some(total)
+            } finally
+                in.close()
+        } catch {
+            case e: IOException => throw new java.sql.SQLException(e)
+        }
+
+    private def read(in: InputStream, target: ByteBuffer): Option[Int] =
+        if (in eq null) None
+        else try {
+            try {
+                val source = Channels.newChannel(in)
+                val start = target.position()
+                while (target.hasRemaining && source.read(target) >= 0) ()
+                if (!target.hasRemaining && in.read() >= 0) throw new BufferOverflowException
+                Some(target.position() - start)
+            } finally
+                in.close()
+        } catch {
+            case e: IOException => throw new java.sql.SQLException(e)
+        }
+}
@@ -0,0 +1,119 @@
+package darts.lib.sql.jdbc
+
+import java.sql.{Connection, PreparedStatement, Statement}
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+  * Inserts many rows with multi-row `INSERT ... VALUES (...), (...)`
+  * statements. The statement is made of `prefix` (for example,
+  * `INSERT INTO item (name, amount) VALUES `) followed by `row` (for
+  * example, `(${name}, ${amount})`) repeated once per row, and the
+  * slots of each copy of `row` are bound from that row's bindings.
+  *
+  * Rows are sent in chunks of `rowsPerStatement` rows, chosen so that
+  * neither `maxRows` nor the driver's parameter limit `maxParameters`
+  * is exceeded. A final, partial chunk is split into chunks whose
+  * sizes are powers of two, so that only a small, fixed set of
+  * statement texts is ever generated; the texts are cached.
+  */
+
+final class BulkInsert(val prefix: Fragment, val row: Fragment, val maxParameters: Int = 32767, val maxRows: Int = 1000) {
+
+    require(prefix.substitutions.isEmpty, "the prefix must not contain substitutions")
+    require(!row.substitutions.exists(_.isExpanding), "the row must not contain expanding substitutions")
+
+    private val rowText = row.text
+    private val rowSubstitutions = row.substitutions.toArray
+    private val texts = new ConcurrentHashMap[Integer, String]
+
+    val rowsPerStatement: Int =
+        math.max(1, math.min(maxRows, maxParameters / math.max(1, rowSubstitutions.length)))
+
+    def textFor(rows: Int): String = {
+        val known = texts.get(rows)
+        if (known ne null) known
+        else {
+            val buffer = new StringBuilder(prefix.text)
+            var i = 0
+            while (i < rows) {
+                if (i > 0) buffer.append(", ")
+                buffer.append(rowText)
+                i += 1
+            }
+            val text = buffer.toString
+            texts.putIfAbsent(rows, text)
+            text
+        }
+    }
+
+    def apply(rows: Iterator[Bindings])(implicit connection: Connection): Int =
+        execute(connection, rows)
+
+    def apply(rows: Iterable[Bindings])(implicit connection: Connection): Int =
+        execute(connection, rows.iterator)
+
+    /**
+      * Inserts all rows and returns the total number of rows affected
+      * as reported by the driver.
+      */
+
+    def execute(connection: Connection, rows: Iterator[Bindings]): Int = {
+        var total = 0
+        var full: PreparedStatement = null
+        try {
+            rows.grouped(rowsPerStatement).foreach { chunk =>
+                if (chunk.size == rowsPerStatement) {
+                    if (full eq null) full = connection.prepareStatement(textFor(rowsPerStatement), Statement.NO_GENERATED_KEYS)
+                    total += run(full, chunk)
+                } else {
+                    var rest = chunk
+                    while (rest.nonEmpty) {
+                        val count = Integer.highestOneBit(rest.size)
+                        val stmt = connection.prepareStatement(textFor(count), Statement.NO_GENERATED_KEYS)
+                        try {
+                            total += run(stmt, rest.take(count))
+                        } finally
+                            stmt.close
+                        rest = rest.drop(count)
+                    }
+                }
+            }
+        } finally
+            if (full ne null) full.close
+        total
+    }
+
+    private def run(stmt: PreparedStatement, chunk: Seq[Bindings]): Int = {
+        var index = 1
+        chunk.foreach { bindings =>
+            var i = 0
+            while (i < rowSubstitutions.length) {
+                rowSubstitutions(i).bindParameter(stmt, index, bindings)
+                index += 1
+                i += 1
+            }
+        }
+        stmt.executeUpdate()
+    }
+
+    override def toString: String =
+        "BulkInsert(" + prefix.text + rowText + "," + rowsPerStatement + ")"
+}
+
+object BulkInsert {
+
+    def apply(prefix: Fragment, row: Fragment): BulkInsert =
+        new BulkInsert(prefix, row)
+
+    /**
+      * Creates a bulk insert into `table`, where each pair of `columns`
+      * names a column and the slot providing its value.
+      */
+
+    def apply(table: String, columns: (String, Slot[_])*): BulkInsert = {
+        val prefix = TextFrag(columns.map(_._1).mkString("INSERT INTO " + table + " (", ", ", ") VALUES "))
+        val values = columns.map(_._2).foldLeft(List[Fragment]())((acc, slot) =>
+            if (acc.isEmpty) List(slot) else slot :: TextFrag(", ") :: acc).reverse
+        new BulkInsert(prefix, Fragment.concatenate(TextFrag("(") :: values ::: List(TextFrag(")")): _*))
+    }
+}
@@ -0,0 +1,102 @@
+package darts.lib.sql.jdbc
+
+import java.sql.{ResultSet, ResultSetMetaData}
+
+/**
+  * Immutable description of the columns of a result: labels, SQL types
+  * and nullability, by 1-based column index (as in JDBC). Templates
+  * keep the layout of their results across executions (see
+  * `Template.layoutOf`), so that readers can resolve labels and choose
+  * decoders once, and only have to check on each execution, that the
+  * column labels are still the same.
+  */
+
+final class ColumnLayout private (private val names: Array[String],
+                                  private val types: Array[Int],
+                                  private val typeNames: Array[String],
+                                  private val nullability: Array[Int]) {
+
+    private val positions = {
+        val map = new java.util.HashMap[String, Integer](names.length * 2)
+        var i = names.length - 1
+        while (i >= 0) {
+            map.put(names(i).toLowerCase, i + 1)
+            i -= 1
+        }
+        map
+    }
+
+    def size: Int = names.length
+
+    def labels: IndexedSeq[String] = names.toIndexedSeq
+
+    def label(index: Int): String = names(index - 1)
+
+    def sqlType(index: Int): Int = types(index - 1)
+
+    def sqlTypeName(index: Int): String = typeNames(index - 1)
+
+    def isNullable(index: Int): Option[Boolean] = nullability(index - 1) match {
+        case ResultSetMetaData.columnNoNulls => Some(false)
+        case ResultSetMetaData.columnNullable => Some(true)
+        case _ => None
+    }
+
+    /**
+      * Tests, whether the given metadata describes columns with the same
+      * labels and SQL types, in the same order, as this layout.
+      */
+
+    def matches(meta: ResultSetMetaData): Boolean = {
+        if (meta.getColumnCount != names.length) false
+        else {
+            var i = 0
+            while (i < names.length) {
+                if (names(i) != meta.getColumnLabel(i + 1) || types(i) != meta.getColumnType(i + 1)) return false
+                i += 1
+            }
+            true
+        }
+    }
+
+    /**
+      * Returns the index of the first column with the given label
+      * (compared case-insensitively, like `ResultSet.findColumn`), or
+      * -1, if there is no such column.
+      */
+
+    def indexOf(label: String): Int = {
+        val known = positions.get(label)
+        if (known ne null) known.intValue
+        else {
+            val folded = positions.get(label.toLowerCase)
+            if (folded ne null) folded.intValue else -1
+        }
+    }
+
+    override def toString: String =
+        names.indices.map(i => names(i) + ":" + typeNames(i)).mkString("ColumnLayout(", ",", ")")
+}
+
+object ColumnLayout {
+
+    def of(meta: ResultSetMetaData): ColumnLayout = {
+        val width = meta.getColumnCount
+        val names = new Array[String](width)
+        val types = new Array[Int](width)
+        val typeNames = new Array[String](width)
+        val nullability = new Array[Int](width)
+        var i = 0
+        while (i < width) {
+            names(i) = meta.getColumnLabel(i + 1)
+            types(i) = meta.getColumnType(i + 1)
+            typeNames(i) = meta.getColumnTypeName(i + 1)
+            nullability(i) = meta.isNullable(i + 1)
+            i += 1
+        }
+        new ColumnLayout(names, types, typeNames, nullability)
+    }
+
+    def of(rs: ResultSet): ColumnLayout =
+        of(rs.getMetaData)
+}
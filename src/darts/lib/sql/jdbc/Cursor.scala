@@ -116,4 +116,100 @@ abstract class BasicCursor[T](private val underlying: ResultSet) extends Cursor[
     final def get: T =
         if (!available) throw new IllegalStateException
         else current
-}
\ No newline at end of file
+}
+
+object Cursor {
+
+    val Empty: Cursor[Nothing] = new Cursor[Nothing] {
+        def next: Boolean = false
+        def get: Nothing = throw new IllegalStateException
+    }
+
+    /**
+      * Concatenates the given cursors. The cursor returned yields all
+      * elements of the first cursor, then all elements of the second
+      * one, and so on. Each underlying cursor is advanced only when
+      * the combined cursor reaches it.
+      */
+
+    def concat[T](cursors: Seq[Cursor[T]]): Cursor[T] =
+        if (cursors.isEmpty) Empty
+        else if (cursors.size == 1) cursors.head
+        else new ConcatCursor(cursors.toList)
+
+    /**
+      * Merges cursors, each of which yields its elements in ascending
+      * order according to `ordering`, into a single cursor yielding
+      * all elements in ascending order. Elements, which compare equal,
+      * are yielded in the order of the cursors in `cursors`. Only the
+      * current element of each underlying cursor is held in memory,
+      * and an underlying cursor is advanced only after its current
+      * element has been yielded.
+      */
+
+    def merge[T](cursors: Seq[Cursor[T]])(implicit ordering: Ordering[T]): Cursor[T] =
+        if (cursors.isEmpty) Empty
+        else if (cursors.size == 1) cursors.head
+        else new MergeCursor(cursors.toIndexedSeq, ordering)
+}
+
+private final class ConcatCursor[T](private var pending: List[Cursor[T]]) extends Cursor[T] {
+
+    private var available: Boolean = false
+
+    def next: Boolean = {
+        while (pending.nonEmpty) {
+            if (pending.head.next) {
+                available = true
+                return true
+            }
+            pending = pending.tail
+        }
+        available = false
+        false
+    }
+
+    def get: T =
+        if (!available) throw new IllegalStateException
+        else pending.head.get
+}
+
+private final class MergeCursor[T](private val cursors: IndexedSeq[Cursor[T]], private val ordering: Ordering[T])
+    extends Cursor[T] {
+
+    private final class Entry(var value: T, val source: Int)
+
+    private val heap = new java.util.PriorityQueue[Entry](cursors.size, new java.util.Comparator[Entry] {
+        def compare(a: Entry, b: Entry): Int = {
+            val c = ordering.compare(a.value, b.value)
+            if (c != 0) c else Integer.compare(a.source, b.source)
+        }
+    })
+
+    private var started: Boolean = false
+    private var current: Entry = null
+
+    def next: Boolean = {
+        if (!started) {
+            started = true
+            var i = 0
+            while (i < cursors.size) {
+                val c = cursors(i)
+                if (c.next) heap.add(new Entry(c.get, i))
+                i += 1
+            }
+        } else if (current ne null) {
+            val c = cursors(current.source)
+            if (c.next) {
+                current.value = c.get
+                heap.add(current)
+            }
+        }
+        current = heap.poll()
+        current ne null
+    }
+
+    def get: T =
+        if (current eq null) throw new IllegalStateException
+        else current.value
+}
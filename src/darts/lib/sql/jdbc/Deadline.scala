@@ -0,0 +1,134 @@
+package darts.lib.sql.jdbc
+
+import java.sql.{SQLException, SQLTimeoutException, Statement}
+import java.util.concurrent.{ScheduledFuture, ScheduledThreadPoolExecutor, ThreadFactory, TimeUnit}
+
+import scala.concurrent.duration.FiniteDuration
+
+/**
+  * Deadline and cancellation token for statement execution. While a
+  * statement runs under a deadline, its remaining budget is applied
+  * via `setQueryTimeout`, and the statement is cancelled with
+  * `Statement.cancel` from a shared timer thread when the deadline
+  * expires, or from whichever thread calls `cancel`.
+  *
+  * A statement aborted this way fails with an `SQLTimeoutException`.
+  * Transaction control is left to the caller: an enclosing transaction
+  * is neither rolled back nor committed. On most databases, the caller
+  * must roll back before the session can be used again; PostgreSQL,
+  * for instance, leaves the transaction aborted, and rejects further
+  * statements in it. `Session.transactionally` does this on its own,
+  * as the timeout propagates out of its block.
+  *
+  * A deadline may be shared by any number of statements, sequential
+  * or concurrent; once expired or cancelled, it stays so, and
+  * statements started under it fail immediately.
+  */
+
+final class Deadline private (val expiresAt: Long, cancellable: Boolean) {
+
+    private var cancelled: Boolean = false
+    private var active: List[Statement] = Nil
+    private var timer: ScheduledFuture[_] = null
+
+    def isFinite: Boolean = expiresAt != Long.MaxValue
+
+    def isExpired: Boolean =
+        synchronized(cancelled) || (isFinite && System.nanoTime - expiresAt >= 0)
+
+    def remainingNanos: Long =
+        if (!isFinite) Long.MaxValue
+        else math.max(0L, expiresAt - System.nanoTime)
+
+    /**
+      * Cancels this token, and all statements currently running under
+      * it. May be called from any thread; calling it more than once has
+      * no further effect. The statements are cancelled while holding
+      * the lock, under which `guard` unregisters them, so that no
+      * cancellation can arrive after a statement has been handed back.
+      */
+
+    def cancel(): Unit = {
+        if (!cancellable) throw new UnsupportedOperationException
+        synchronized {
+            if (!cancelled) {
+                cancelled = true
+                if (timer ne null) timer.cancel(false)
+                active.foreach(stmt => try stmt.cancel() catch { case _: SQLException => () })
+                active = Nil
+            }
+        }
+    }
+
+    private def register(stmt: Statement): Unit = synchronized {
+        if (cancelled) throw Deadline.expired(null)
+        active = stmt :: active
+        if ((timer eq null) && isFinite)
+            timer = Deadline.timer.schedule(new Runnable {
+                def run(): Unit = cancel()
+            }, remainingNanos, TimeUnit.NANOSECONDS)
+    }
+
+    private def unregister(stmt: Statement): Unit = synchronized {
+        active = active.filterNot(_ eq stmt)
+    }
+
+    private[jdbc] def guard[T](stmt: Statement)(body: => T): T =
+        if (this eq Deadline.None) body
+        else {
+            register(stmt)
+            try {
+                if (isFinite) {
+                    val remaining = remainingNanos
+                    if (remaining == 0L) throw Deadline.expired(null)
+                    stmt.setQueryTimeout(math.max(1L, (remaining + 999999999L) / 1000000000L).toInt)
+                }
+                body
+            } catch {
+                case e: SQLException if isExpired =>
+                    throw if (e.isInstanceOf[SQLTimeoutException]) e else Deadline.expired(e)
+            } finally
+                unregister(stmt)
+        }
+
+    override def toString: String =
+        if (!isFinite) "Deadline(none)"
+        else "Deadline(" + remainingNanos / 1000000L + "ms)"
+}
+
+object Deadline {
+
+    /**
+      * The absent deadline. Statements run under it are not guarded at
+      * all, and it cannot be cancelled.
+      */
+
+    val None: Deadline = new Deadline(Long.MaxValue, false)
+
+    /**
+      * Creates a cancellation token without a time limit.
+      */
+
+    def apply(): Deadline = new Deadline(Long.MaxValue, true)
+
+    def after(millis: Long): Deadline =
+        new Deadline(System.nanoTime + TimeUnit.MILLISECONDS.toNanos(millis), true)
+
+    def after(duration: FiniteDuration): Deadline =
+        new Deadline(System.nanoTime + duration.toNanos, true)
+
+    private def expired(cause: Throwable): SQLTimeoutException =
+        new SQLTimeoutException("deadline expired", cause)
+
+    private lazy val timer: ScheduledThreadPoolExecutor = {
+        val executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory {
+            def newThread(task: Runnable): Thread = {
+                val thread = new Thread(task, "darts-sql-deadline")
+                thread.setDaemon(true)
+                thread
+            }
+        })
+        executor.setRemoveOnCancelPolicy(true)
+        executor
+    }
+}
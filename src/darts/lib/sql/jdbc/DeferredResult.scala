@@ -1,9 +1,37 @@
 package darts.lib.sql.jdbc
 
+import java.sql.ResultSet
+
+import scala.collection.mutable.ArrayBuilder
+
 trait DeferredResult[+T] extends Traversable[T] {
 
     def scroll[U](fn: (Cursor[T]) => U): U
 
+    /**
+      * Scrolls the results under the given deadline. Results backed by
+      * a statement apply the deadline to it, and cancel the statement
+      * when the deadline fires; the default implementation can only
+      * refuse to start once the deadline has expired.
+      */
+
+    def scrollUntil[U](deadline: Deadline)(fn: (Cursor[T]) => U): U =
+        if (deadline.isExpired) throw new java.sql.SQLTimeoutException("deadline expired")
+        else scroll(fn)
+
+    /**
+      * Returns a view of these results, which scrolls under the given
+      * deadline, so that `unique`, `first` and the collection methods
+      * are bounded, too.
+      */
+
+    def within(deadline: Deadline): DeferredResult[T] = {
+        val self = this
+        new DeferredResult[T] {
+            def scroll[U](fn: (Cursor[T]) => U): U = self.scrollUntil(deadline)(fn)
+        }
+    }
+
     def unique: Option[T] = scroll { cur =>
         if (!cur.next) None
         else {
@@ -20,4 +48,176 @@ trait DeferredResult[+T] extends Traversable[T] {
     override def foreach[U](fn: (T) => U): Unit = scroll { cur =>
         while (cur.next) fn(cur.get)
     }
-}
\ No newline at end of file
+
+    /**
+      * Aggregates all rows while scrolling. (Note, that `foldLeft` and
+      * the other `Traversable` folds already stream the rows; `groupBy`,
+      * however, does not.)
+      */
+
+    def summarize[A, R](aggregator: Aggregator[T, A, R]): R = scroll { cur =>
+        var accumulator = aggregator.zero
+        while (cur.next) accumulator = aggregator.add(accumulator, cur.get)
+        aggregator.result(accumulator)
+    }
+
+    /**
+      * Groups the rows by `key` while scrolling, aggregating each group
+      * as it goes, so that only one accumulator per group is kept.
+      */
+
+    def groupWith[K, A, R](key: (T) => K)(aggregator: Aggregator[T, A, R]): Map[K, R] = scroll { cur =>
+        val groups = new java.util.HashMap[K, A]
+        while (cur.next) {
+            val row = cur.get
+            val k = key(row)
+            val known = groups.get(k)
+            val accumulator = if ((known == null) && !groups.containsKey(k)) aggregator.zero else known
+            groups.put(k, aggregator.add(accumulator, row))
+        }
+        val result = Map.newBuilder[K, R]
+        val it = groups.entrySet.iterator
+        while (it.hasNext) {
+            val e = it.next
+            result += e.getKey -> aggregator.result(e.getValue)
+        }
+        result.result()
+    }
+
+    /**
+      * Like `groupWith`, but for `Long` keys, which are kept unboxed in
+      * a `LongHashMap`.
+      */
+
+    def groupWithLong[A, R](key: (T) => Long)(aggregator: Aggregator[T, A, R]): LongHashMap[R] = scroll { cur =>
+        val groups = new LongHashMap[A]
+        while (cur.next) {
+            val row = cur.get
+            val k = key(row)
+            groups(k) = aggregator.add(groups.getOrElseUpdate(k, aggregator.zero), row)
+        }
+        val result = new LongHashMap[R](groups.size)
+        groups.foreach((k, accumulator) => result(k) = aggregator.result(accumulator))
+        result
+    }
+
+    /**
+      * Returns the `k` greatest rows according to `ordering`, greatest
+      * first, keeping no more than `k` rows in memory while scrolling.
+      */
+
+    def top[T1 >: T](k: Int)(implicit ordering: Ordering[T1]): Seq[T1] = scroll { cur =>
+        val heap = new java.util.PriorityQueue[T1](math.max(1, k), ordering)
+        while (cur.next) {
+            val row: T1 = cur.get
+            if (heap.size < k) heap.add(row)
+            else if (k > 0 && ordering.gt(row, heap.peek)) {
+                heap.poll()
+                heap.add(row)
+            }
+        }
+        val result = new scala.collection.mutable.ArrayBuffer[T1](heap.size)
+        while (!heap.isEmpty) result += heap.poll()
+        result.reverse.toVector
+    }
+
+    def countDistinct[K](key: (T) => K): Int = scroll { cur =>
+        val seen = new java.util.HashSet[K]
+        while (cur.next) seen.add(key(cur.get))
+        seen.size
+    }
+}
+
+/**
+  * Results backed by a statement, which can pass the underlying result
+  * set to operations reading columns directly instead of going through
+  * the cursor, like the primitive-specialised materialisations below.
+  */
+
+trait StatementResult[+T] extends DeferredResult[T] {
+
+    /**
+      * Executes the statement under the given deadline, and passes its
+      * result set to `fn`.
+      */
+
+    def scrollRows[U](deadline: Deadline)(fn: (ResultSet) => U): U
+
+    override def within(deadline: Deadline): StatementResult[T] = {
+        val self = this
+        new StatementResult[T] {
+            def scroll[U](fn: (Cursor[T]) => U): U = self.scrollUntil(deadline)(fn)
+            def scrollRows[U](other: Deadline)(fn: (ResultSet) => U): U =
+                self.scrollRows(if (other eq Deadline.None) deadline else other)(fn)
+        }
+    }
+
+    /**
+      * Reads the given column of all rows into an array, without boxing
+      * the values. `NULL`s are rejected with a `NoSuchElementException`.
+      */
+
+    def toLongArray(column: Column[Long]): Array[Long] = scrollRows(Deadline.None) { rs =>
+        val reader = Primitives.longReader(column.descriptor)
+        val result = new ArrayBuilder.ofLong
+        var index = -1
+        while (rs.next) {
+            if (index < 0) index = Primitives.indexOf(rs, column)
+            result += reader.read(rs, index)
+        }
+        result.result()
+    }
+
+    def toIntArray(column: Column[Int]): Array[Int] = scrollRows(Deadline.None) { rs =>
+        val reader = Primitives.intReader(column.descriptor)
+        val result = new ArrayBuilder.ofInt
+        var index = -1
+        while (rs.next) {
+            if (index < 0) index = Primitives.indexOf(rs, column)
+            result += reader.read(rs, index)
+        }
+        result.result()
+    }
+
+    def toDoubleArray(column: Column[Double]): Array[Double] = scrollRows(Deadline.None) { rs =>
+        val reader = Primitives.doubleReader(column.descriptor)
+        val result = new ArrayBuilder.ofDouble
+        var index = -1
+        while (rs.next) {
+            if (index < 0) index = Primitives.indexOf(rs, column)
+            result += reader.read(rs, index)
+        }
+        result.result()
+    }
+
+    def toLongSet(column: Column[Long]): LongHashSet = scrollRows(Deadline.None) { rs =>
+        val reader = Primitives.longReader(column.descriptor)
+        val result = new LongHashSet
+        var index = -1
+        while (rs.next) {
+            if (index < 0) index = Primitives.indexOf(rs, column)
+            result.add(reader.read(rs, index))
+        }
+        result
+    }
+
+    /**
+      * Reads the rows into a map keyed by the given column, with values
+      * computed by `value` from the current row. Later rows replace
+      * earlier ones with the same key.
+      */
+
+    def toLongMap[V](key: Column[Long])(value: (ResultSet) => V): LongHashMap[V] = scrollRows(Deadline.None) { rs =>
+        val reader = Primitives.longReader(key.descriptor)
+        val result = new LongHashMap[V]
+        var index = -1
+        while (rs.next) {
+            if (index < 0) index = Primitives.indexOf(rs, key)
+            result(reader.read(rs, index)) = value(rs)
+        }
+        result
+    }
+
+    def countDistinctLong(column: Column[Long]): Int =
+        toLongSet(column).size
+}
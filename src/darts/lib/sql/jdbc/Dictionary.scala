@@ -0,0 +1,68 @@
+package darts.lib.sql.jdbc
+
+import java.sql.{PreparedStatement, ResultSet, Types}
+
+/**
+  * Bounded, lossy dictionary used to share `String` instances among
+  * equal values. The dictionary is a direct-mapped table of `capacity`
+  * entries (rounded up to a power of two): a value, whose slot holds
+  * an equal string, is replaced by that string; otherwise, the value
+  * takes over the slot. Strings longer than `maxLength` are never
+  * stored. Instances may be shared among threads; concurrent updates
+  * may lose entries, but never yield a string, which is not equal to
+  * the value looked up.
+  */
+
+final class StringDictionary(capacity: Int, val maxLength: Int = 64) {
+
+    private val slots = new Array[String](Integer.highestOneBit(math.max(2, capacity) * 2 - 1))
+    private val mask = slots.length - 1
+
+    def size: Int = slots.length
+
+    def intern(value: String): String =
+        if ((value eq null) || value.length > maxLength) value
+        else {
+            val hash = value.hashCode
+            val slot = (hash ^ (hash >>> 16)) & mask
+            val known = slots(slot)
+            if ((known ne null) && ((known eq value) || known == value)) known
+            else {
+                slots(slot) = value
+                value
+            }
+        }
+}
+
+/**
+  * String type, which passes all values read through a dictionary,
+  * so that repeated values (as found in low-cardinality columns like
+  * status codes, country or currency codes) share a single instance.
+  * The dictionary belongs to the type instance; a column defined with
+  * a fresh instance thus gets a dictionary of its own, which is shared
+  * by all executions of the queries using that column.
+  */
+
+final class DeduplicatedString(val dictionary: StringDictionary) extends Primitive[String] {
+
+    protected val typeCode = Types.VARCHAR
+
+    protected def convert(raw: AnyRef): String =
+        dictionary.intern(Type.String.fromObject(raw).get)
+
+    protected def doBindValue(stmt: PreparedStatement, index: Int, value: String): Unit =
+        stmt.setString(index, value)
+
+    def readValue(rs: ResultSet, name: String): Option[String] =
+        Option(dictionary.intern(rs.getString(name)))
+
+    def readValue(rs: ResultSet, index: Int): Option[String] =
+        Option(dictionary.intern(rs.getString(index)))
+
+    override def readRequired(rs: ResultSet, index: Int): String = {
+        val raw = rs.getString(index)
+        if (raw eq null) throw Type.nullValue(index) else dictionary.intern(raw)
+    }
+
+    override def toString: String = "DeduplicatedString(" + dictionary.size + ")"
+}
@@ -78,7 +78,7 @@ final case class SequenceFrag(val fragments: List[Fragment]) extends Fragment {
     def substitutions: Seq[Substitution[_]] = fragments.flatMap(_.substitutions)
 }
 
-final case class Slot[T](val name: String, val descriptor: Type[T])
+final case class Slot[T](val name: String, val descriptor: ParameterType[T])
         extends Substitution[T]
         with Fragment {
 
@@ -90,6 +90,11 @@ final case class Slot[T](val name: String, val descriptor: Type[T])
         descriptor.bindValue(stmt, index, bindings(this))
     }
 
+    override def parameterCount(bindings: Resolver): Int =
+        if (descriptor.isExpanding) descriptor.parameterCount(bindings(this)) else 1
+
+    override def isExpanding: Boolean = descriptor.isExpanding
+
     def bind(value: Option[T]): Bindings.Binding[T] = Bindings.Binding(this, value)
 
     def apply(value: T): Bindings.Binding[T] = bind(Some(value))
@@ -99,7 +104,7 @@ final case class Slot[T](val name: String, val descriptor: Type[T])
     override def toString: String = "Slot[" + descriptor + "](" + name + ")"
 }
 
-final case class Constant[T](val value: Option[T], val descriptor: Type[T])
+final case class Constant[T](val value: Option[T], val descriptor: ParameterType[T])
         extends Substitution[T]
         with Fragment {
 
@@ -111,5 +116,10 @@ final case class Constant[T](val value: Option[T], val descriptor: Type[T])
         descriptor.bindValue(stmt, index, value)
     }
 
+    override def parameterCount(bindings: Resolver): Int =
+        descriptor.parameterCount(value)
+
+    override def isExpanding: Boolean = descriptor.isExpanding
+
     override def toString: String = "Constant[" + descriptor + "](" + value + ")"
 }
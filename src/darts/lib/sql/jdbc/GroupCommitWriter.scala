@@ -0,0 +1,198 @@
+package darts.lib.sql.jdbc
+
+import java.util.concurrent.{LinkedBlockingQueue, TimeUnit}
+
+import scala.collection.mutable.ArrayBuffer
+import scala.concurrent.{Future, Promise}
+import scala.util.control.NonFatal
+
+/**
+  * Coalesces small writes submitted by many threads into few
+  * transactions. Submissions are collected by a dedicated thread for up
+  * to `maxDelay` milliseconds after the first one arrives, or until
+  * `maxBatch` are pending, and then executed in a single transaction on
+  * a dedicated session; consecutive submissions of the same template
+  * are sent as one JDBC batch. Each submission's future completes with
+  * its own update count (which may be `Statement.SUCCESS_NO_INFO`, if
+  * the driver does not report counts for batches) once the transaction
+  * has committed.
+  *
+  * If the combined transaction fails, it is rolled back, and the
+  * submissions are re-run one by one, each in a transaction of its own,
+  * so that only the offending submissions fail. Submissions are
+  * therefore expected to be independent of each other.
+  *
+  * Should the writer thread die (by interruption, or an unexpected
+  * error), the writer stops accepting submissions, and all pending
+  * ones are failed with the cause.
+  */
+
+final class GroupCommitWriter(val factory: SessionFactory,
+                              val maxBatch: Int = 1000,
+                              val maxDelay: Long = 2L) {
+
+    import GroupCommitWriter._
+
+    private val queue = new LinkedBlockingQueue[Submission]
+    private val maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelay)
+    @volatile private var running: Boolean = true
+    @volatile private var failure: Throwable = null
+    private var session: Session = null
+
+    private val worker = {
+        val thread = new Thread(new Runnable {
+            def run(): Unit = loop()
+        }, "darts-sql-group-commit")
+        thread.setDaemon(true)
+        thread.start()
+        thread
+    }
+
+    /**
+      * Enqueues a submission. The check for a running writer and the
+      * enqueueing happen under the lock, under which `close` (and a
+      * dying writer thread) stop the writer, so that no submission can
+      * be enqueued after the writer thread has drained the queue.
+      */
+
+    def submit(action: Action, bindings: Bindings): Future[Int] = {
+        val submission = new Submission(action.template, bindings, Promise[Int]())
+        synchronized {
+            if (!running) throw stopped
+            queue.put(submission)
+        }
+        submission.promise.future
+    }
+
+    def submit(action: Action, bindings: Bindings.Binding[_]*): Future[Int] =
+        submit(action, Bindings(bindings: _*))
+
+    /**
+      * Stops accepting submissions, executes the ones still pending,
+      * and closes the session.
+      */
+
+    def close(): Unit = {
+        synchronized {
+            running = false
+        }
+        worker.join()
+        drain(stopped)
+    }
+
+    private def stopped: IllegalStateException =
+        if (failure eq null) new IllegalStateException("writer has been closed")
+        else new IllegalStateException("writer thread has died", failure)
+
+    private def drain(cause: Throwable): Unit = {
+        var left = queue.poll()
+        while (left ne null) {
+            left.promise.tryFailure(cause)
+            left = queue.poll()
+        }
+    }
+
+    private def loop(): Unit = {
+        val group = new ArrayBuffer[Submission](maxBatch)
+        try {
+            while (running || !queue.isEmpty) {
+                val first = queue.poll(100L, TimeUnit.MILLISECONDS)
+                if (first ne null) {
+                    group += first
+                    val until = System.nanoTime + maxDelayNanos
+                    var more = true
+                    while (more && group.size < maxBatch) {
+                        val remaining = until - System.nanoTime
+                        val next = if (remaining <= 0L) queue.poll() else queue.poll(remaining, TimeUnit.NANOSECONDS)
+                        if (next eq null) more = false
+                        else group += next
+                    }
+                    process(group)
+                    group.clear()
+                }
+            }
+        } catch {
+            case e: Throwable =>
+                synchronized {
+                    failure = e
+                    running = false
+                }
+                group.foreach(_.promise.tryFailure(e))
+                drain(e)
+                if (!e.isInstanceOf[InterruptedException]) throw e
+        } finally
+            release()
+    }
+
+    private def process(group: Seq[Submission]): Unit =
+        try {
+            val s = current
+            val counts = s.transactionally(runsOf(group).flatMap(run => execute(s, run)))
+            var i = 0
+            while (i < group.size) {
+                group(i).promise.success(counts(i))
+                i += 1
+            }
+        } catch {
+            case NonFatal(e) =>
+                check()
+                if (group.size == 1) group.head.promise.failure(e)
+                else group.foreach(individually)
+        }
+
+    private def individually(submission: Submission): Unit =
+        try {
+            val s = current
+            submission.promise.success(s.transactionally(submission.template.executeCommand(s, submission.bindings)))
+        } catch {
+            case NonFatal(e) =>
+                check()
+                submission.promise.failure(e)
+        }
+
+    private def execute(session: Session, run: Seq[Submission]): Seq[Int] = {
+        val template = run.head.template
+        if (run.size == 1 || template.isExpanding) run.map(s => template.executeCommand(session, s.bindings))
+        else template.executeBatch(session, run.iterator.map(_.bindings), maxBatch).toSeq
+    }
+
+    private def runsOf(group: Seq[Submission]): Seq[Seq[Submission]] = {
+        val runs = new ArrayBuffer[Seq[Submission]]
+        var start = 0
+        while (start < group.size) {
+            var end = start + 1
+            while (end < group.size && (group(end).template eq group(start).template)) end += 1
+            runs += group.slice(start, end)
+            start = end
+        }
+        runs
+    }
+
+    private def current: Session = {
+        if (session eq null) {
+            val fresh = factory.openSession
+            Characteristics.configure(fresh)
+            session = fresh
+        }
+        session
+    }
+
+    private def check(): Unit =
+        if (session ne null) {
+            val valid = try session.isValid(1) catch { case NonFatal(_) => false }
+            if (!valid) release()
+        }
+
+    private def release(): Unit =
+        if (session ne null) {
+            try session.close() catch { case NonFatal(_) => () }
+            session = null
+        }
+}
+
+object GroupCommitWriter {
+
+    private val Characteristics = SessionOpenMode.ReadWrite + SessionAutoCommit.Disabled
+
+    private final class Submission(val template: Template, val bindings: Bindings, val promise: Promise[Int])
+}
@@ -0,0 +1,609 @@
+package darts.lib.sql.jdbc
+
+import java.io.{InputStream, Reader}
+import java.sql.{CallableStatement, Connection, Date, PreparedStatement, ResultSet, Statement, Time, Timestamp}
+
+import darts.lib.sql.jdbc.delegate.{DelegateCallableStatement, DelegatePreparedStatement, DelegateResultSet, DelegateStatement}
+
+/**
+  * Hooks into the statement life-cycle of sessions, for metrics,
+  * caching, tracing or fault injection. Interceptors are registered
+  * on a `BasicSessionFactory`, and apply to the sessions opened after
+  * registration. Hooks are called in registration order; an exception
+  * thrown by a `before` hook aborts the operation. The `after` hooks
+  * receive the elapsed time in nanoseconds and the failure, if any
+  * (`null` otherwise).
+  *
+  * The fetch hooks are called once per result set: `beforeFetch`,
+  * when the first row is requested, and `afterFetch`, when the result
+  * set is exhausted or closed, with the number of rows read and the
+  * total time spent in `next`.
+  *
+  * The close hooks are called around `Statement.close`; `afterClose`
+  * is called even if closing fails.
+  *
+  * Interceptors, which answer `true` from `capturesParameters`, make
+  * the session record the values bound to prepared statements, which
+  * can then be obtained in the execute hooks via `parametersOf`.
+  * (Parameters bound to callable statements are not recorded.)
+  */
+
+trait StatementInterceptor {
+
+    def capturesParameters: Boolean = false
+
+    def beforePrepare(sql: String): Unit = ()
+
+    def afterPrepare(sql: String, nanos: Long, failure: Throwable): Unit = ()
+
+    def beforeExecute(sql: String, statement: Statement): Unit = ()
+
+    def afterExecute(sql: String, statement: Statement, nanos: Long, failure: Throwable): Unit = ()
+
+    def beforeFetch(sql: String, statement: Statement): Unit = ()
+
+    def afterFetch(sql: String, statement: Statement, rows: Long, nanos: Long): Unit = ()
+
+    def beforeClose(sql: String, statement: Statement): Unit = ()
+
+    def afterClose(sql: String, statement: Statement): Unit = ()
+}
+
+object StatementInterceptor {
+
+    /**
+      * Marks a parameter bound to SQL `NULL` in `parametersOf`.
+      */
+
+    val NullValue: AnyRef = new AnyRef {
+        override def toString: String = "NULL"
+    }
+
+    /**
+      * Marks a parameter bound from a stream, reader or LOB in
+      * `parametersOf`, whose value cannot be reproduced.
+      */
+
+    val StreamValue: AnyRef = new AnyRef {
+        override def toString: String = "<stream>"
+    }
+
+    /**
+      * Returns the values currently bound to the given statement, if
+      * it is a prepared statement of a session with a parameter capturing
+      * interceptor registered, and `None` otherwise. Unbound parameters
+      * are reported as `null`.
+      */
+
+    def parametersOf(statement: Statement): Option[IndexedSeq[AnyRef]] = statement match {
+        case ps: InterceptingPreparedStatement => ps.parameters
+        case _ => None
+    }
+}
+
+private[jdbc] final class InterceptorChain(private val interceptors: Array[StatementInterceptor]) {
+
+    val capturesParameters: Boolean = interceptors.exists(_.capturesParameters)
+
+    def prepare[S <: Statement](sql: String)(open: => S): S = {
+        var i = 0
+        while (i < interceptors.length) {
+            interceptors(i).beforePrepare(sql)
+            i += 1
+        }
+        val start = System.nanoTime
+        val stmt = try open catch {
+            case e: Throwable =>
+                afterPrepare(sql, System.nanoTime - start, e)
+                throw e
+        }
+        afterPrepare(sql, System.nanoTime - start, null)
+        stmt
+    }
+
+    private def afterPrepare(sql: String, nanos: Long, failure: Throwable): Unit = {
+        var i = 0
+        while (i < interceptors.length) {
+            interceptors(i).afterPrepare(sql, nanos, failure)
+            i += 1
+        }
+    }
+
+    def execute[T](sql: String, statement: Statement)(body: => T): T = {
+        var i = 0
+        while (i < interceptors.length) {
+            interceptors(i).beforeExecute(sql, statement)
+            i += 1
+        }
+        val start = System.nanoTime
+        val result = try body catch {
+            case e: Throwable =>
+                afterExecute(sql, statement, System.nanoTime - start, e)
+                throw e
+        }
+        afterExecute(sql, statement, System.nanoTime - start, null)
+        result
+    }
+
+    private def afterExecute(sql: String, statement: Statement, nanos: Long, failure: Throwable): Unit = {
+        var i = 0
+        while (i < interceptors.length) {
+            interceptors(i).afterExecute(sql, statement, nanos, failure)
+            i += 1
+        }
+    }
+
+    def beforeFetch(sql: String, statement: Statement): Unit = {
+        var i = 0
+        while (i < interceptors.length) {
+            interceptors(i).beforeFetch(sql, statement)
+            i += 1
+        }
+    }
+
+    def afterFetch(sql: String, statement: Statement, rows: Long, nanos: Long): Unit = {
+        var i = 0
+        while (i < interceptors.length) {
+            interceptors(i).afterFetch(sql, statement, rows, nanos)
+            i += 1
+        }
+    }
+
+    def close(sql: String, statement: Statement)(body: => Unit): Unit = {
+        var i = 0
+        while (i < interceptors.length) {
+            interceptors(i).beforeClose(sql, statement)
+            i += 1
+        }
+        try body finally {
+            i = 0
+            while (i < interceptors.length) {
+                interceptors(i).afterClose(sql, statement)
+                i += 1
+            }
+        }
+    }
+}
+
+private[jdbc] object InterceptorChain {
+
+    def of(interceptors: Seq[StatementInterceptor]): InterceptorChain =
+        if (interceptors.isEmpty) null
+        else new InterceptorChain(interceptors.toArray)
+}
+
+private[jdbc] class InterceptingStatement(session: Connection, stmt: Statement, chain: InterceptorChain)
+    extends DelegateStatement[Statement, Connection](session, stmt) {
+
+    private var sql: String = null
+
+    override protected def wrapResultSet(rs: ResultSet): ResultSet =
+        if (rs eq null) null else new InterceptingResultSet(this, rs, sql, chain)
+
+    override def executeQuery(sql: String): ResultSet = {
+        this.sql = sql
+        chain.execute(sql, this)(super.executeQuery(sql))
+    }
+
+    override def executeUpdate(sql: String): Int = {
+        this.sql = sql
+        chain.execute(sql, this)(super.executeUpdate(sql))
+    }
+
+    override def executeUpdate(sql: String, autoGeneratedKeys: Int): Int = {
+        this.sql = sql
+        chain.execute(sql, this)(super.executeUpdate(sql, autoGeneratedKeys))
+    }
+
+    override def execute(sql: String): Boolean = {
+        this.sql = sql
+        chain.execute(sql, this)(super.execute(sql))
+    }
+
+    override def executeUpdate(sql: String, columnIndexes: Array[Int]): Int = {
+        this.sql = sql
+        chain.execute(sql, this)(super.executeUpdate(sql, columnIndexes))
+    }
+
+    override def executeUpdate(sql: String, columnNames: Array[String]): Int = {
+        this.sql = sql
+        chain.execute(sql, this)(super.executeUpdate(sql, columnNames))
+    }
+
+    override def executeLargeUpdate(sql: String): Long = {
+        this.sql = sql
+        chain.execute(sql, this)(super.executeLargeUpdate(sql))
+    }
+
+    override def executeLargeUpdate(sql: String, autoGeneratedKeys: Int): Long = {
+        this.sql = sql
+        chain.execute(sql, this)(super.executeLargeUpdate(sql, autoGeneratedKeys))
+    }
+
+    override def executeLargeUpdate(sql: String, columnIndexes: Array[Int]): Long = {
+        this.sql = sql
+        chain.execute(sql, this)(super.executeLargeUpdate(sql, columnIndexes))
+    }
+
+    override def executeLargeUpdate(sql: String, columnNames: Array[String]): Long = {
+        this.sql = sql
+        chain.execute(sql, this)(super.executeLargeUpdate(sql, columnNames))
+    }
+
+    override def execute(sql: String, autoGeneratedKeys: Int): Boolean = {
+        this.sql = sql
+        chain.execute(sql, this)(super.execute(sql, autoGeneratedKeys))
+    }
+
+    override def execute(sql: String, columnIndexes: Array[Int]): Boolean = {
+        this.sql = sql
+        chain.execute(sql, this)(super.execute(sql, columnIndexes))
+    }
+
+    override def execute(sql: String, columnNames: Array[String]): Boolean = {
+        this.sql = sql
+        chain.execute(sql, this)(super.execute(sql, columnNames))
+    }
+
+    override def addBatch(sql: String): Unit = {
+        this.sql = sql
+        super.addBatch(sql)
+    }
+
+    override def executeBatch(): Array[Int] =
+        chain.execute(sql, this)(super.executeBatch())
+
+    override def executeLargeBatch(): Array[Long] =
+        chain.execute(sql, this)(super.executeLargeBatch())
+
+    override def close(): Unit =
+        chain.close(sql, this)(super.close())
+}
+
+private[jdbc] class InterceptingPreparedStatement(session: Connection, stmt: PreparedStatement, val sql: String, chain: InterceptorChain)
+    extends DelegatePreparedStatement[PreparedStatement, Connection](session, stmt) {
+
+    private var values: Array[AnyRef] = if (chain.capturesParameters) new Array[AnyRef](8) else null
+    private var count: Int = 0
+
+    private[jdbc] def parameters: Option[IndexedSeq[AnyRef]] =
+        if (values eq null) None
+        else Some(values.take(count).toIndexedSeq)
+
+    private def record(index: Int, value: AnyRef): Unit =
+        if (values ne null) {
+            if (index > values.length) values = java.util.Arrays.copyOf(values, math.max(index, 2 * values.length))
+            values(index - 1) = if (value eq null) StatementInterceptor.NullValue else value
+            if (index > count) count = index
+        }
+
+    override protected def wrapResultSet(rs: ResultSet): ResultSet =
+        if (rs eq null) null else new InterceptingResultSet(this, rs, sql, chain)
+
+    override def clearParameters(): Unit = {
+        if (values ne null) {
+            java.util.Arrays.fill(values, null)
+            count = 0
+        }
+        super.clearParameters()
+    }
+
+    override def setNull(parameterIndex: Int, sqlType: Int): Unit = {
+        record(parameterIndex, null)
+        super.setNull(parameterIndex, sqlType)
+    }
+
+    override def setNull(parameterIndex: Int, sqlType: Int, typeName: String): Unit = {
+        record(parameterIndex, null)
+        super.setNull(parameterIndex, sqlType, typeName)
+    }
+
+    override def setBoolean(parameterIndex: Int, x: Boolean): Unit = {
+        record(parameterIndex, Boolean.box(x))
+        super.setBoolean(parameterIndex, x)
+    }
+
+    override def setByte(parameterIndex: Int, x: Byte): Unit = {
+        record(parameterIndex, Byte.box(x))
+        super.setByte(parameterIndex, x)
+    }
+
+    override def setShort(parameterIndex: Int, x: Short): Unit = {
+        record(parameterIndex, Short.box(x))
+        super.setShort(parameterIndex, x)
+    }
+
+    override def setInt(parameterIndex: Int, x: Int): Unit = {
+        record(parameterIndex, Int.box(x))
+        super.setInt(parameterIndex, x)
+    }
+
+    override def setLong(parameterIndex: Int, x: Long): Unit = {
+        record(parameterIndex, Long.box(x))
+        super.setLong(parameterIndex, x)
+    }
+
+    override def setFloat(parameterIndex: Int, x: Float): Unit = {
+        record(parameterIndex, Float.box(x))
+        super.setFloat(parameterIndex, x)
+    }
+
+    override def setDouble(parameterIndex: Int, x: Double): Unit = {
+        record(parameterIndex, Double.box(x))
+        super.setDouble(parameterIndex, x)
+    }
+
+    override def setBigDecimal(parameterIndex: Int, x: java.math.BigDecimal): Unit = {
+        record(parameterIndex, x)
+        super.setBigDecimal(parameterIndex, x)
+    }
+
+    override def setString(parameterIndex: Int, x: String): Unit = {
+        record(parameterIndex, x)
+        super.setString(parameterIndex, x)
+    }
+
+    override def setBytes(parameterIndex: Int, x: Array[Byte]): Unit = {
+        record(parameterIndex, x)
+        super.setBytes(parameterIndex, x)
+    }
+
+    override def setDate(parameterIndex: Int, x: Date): Unit = {
+        record(parameterIndex, x)
+        super.setDate(parameterIndex, x)
+    }
+
+    override def setTime(parameterIndex: Int, x: Time): Unit = {
+        record(parameterIndex, x)
+        super.setTime(parameterIndex, x)
+    }
+
+    override def setTimestamp(parameterIndex: Int, x: Timestamp): Unit = {
+        record(parameterIndex, x)
+        super.setTimestamp(parameterIndex, x)
+    }
+
+    override def setObject(parameterIndex: Int, x: AnyRef): Unit = {
+        record(parameterIndex, x)
+        super.setObject(parameterIndex, x)
+    }
+
+    override def setObject(parameterIndex: Int, x: AnyRef, targetSqlType: Int): Unit = {
+        record(parameterIndex, x)
+        super.setObject(parameterIndex, x, targetSqlType)
+    }
+
+    override def setArray(parameterIndex: Int, x: java.sql.Array): Unit = {
+        record(parameterIndex, x)
+        super.setArray(parameterIndex, x)
+    }
+
+    override def setBinaryStream(parameterIndex: Int, x: InputStream, length: Long): Unit = {
+        record(parameterIndex, StatementInterceptor.StreamValue)
+        super.setBinaryStream(parameterIndex, x, length)
+    }
+
+    override def setDate(parameterIndex: Int, x: Date, cal: java.util.Calendar): Unit = {
+        record(parameterIndex, x)
+        super.setDate(parameterIndex, x, cal)
+    }
+
+    override def setTime(parameterIndex: Int, x: Time, cal: java.util.Calendar): Unit = {
+        record(parameterIndex, x)
+        super.setTime(parameterIndex, x, cal)
+    }
+
+    override def setTimestamp(parameterIndex: Int, x: Timestamp, cal: java.util.Calendar): Unit = {
+        record(parameterIndex, x)
+        super.setTimestamp(parameterIndex, x, cal)
+    }
+
+    override def setNString(parameterIndex: Int, value: String): Unit = {
+        record(parameterIndex, value)
+        super.setNString(parameterIndex, value)
+    }
+
+    override def setObject(parameterIndex: Int, x: AnyRef, targetSqlType: Int, scaleOrLength: Int): Unit = {
+        record(parameterIndex, x)
+        super.setObject(parameterIndex, x, targetSqlType, scaleOrLength)
+    }
+
+    override def setRef(parameterIndex: Int, x: java.sql.Ref): Unit = {
+        record(parameterIndex, x)
+        super.setRef(parameterIndex, x)
+    }
+
+    override def setURL(parameterIndex: Int, x: java.net.URL): Unit = {
+        record(parameterIndex, x)
+        super.setURL(parameterIndex, x)
+    }
+
+    override def setRowId(parameterIndex: Int, x: java.sql.RowId): Unit = {
+        record(parameterIndex, x)
+        super.setRowId(parameterIndex, x)
+    }
+
+    override def setAsciiStream(parameterIndex: Int, x: InputStream): Unit = {
+        record(parameterIndex, StatementInterceptor.StreamValue)
+        super.setAsciiStream(parameterIndex, x)
+    }
+
+    override def setAsciiStream(parameterIndex: Int, x: InputStream, length: Int): Unit = {
+        record(parameterIndex, StatementInterceptor.StreamValue)
+        super.setAsciiStream(parameterIndex, x, length)
+    }
+
+    override def setAsciiStream(parameterIndex: Int, x: InputStream, length: Long): Unit = {
+        record(parameterIndex, StatementInterceptor.StreamValue)
+        super.setAsciiStream(parameterIndex, x, length)
+    }
+
+    override def setUnicodeStream(parameterIndex: Int, x: InputStream, length: Int): Unit = {
+        record(parameterIndex, StatementInterceptor.StreamValue)
+        super.setUnicodeStream(parameterIndex, x, length)
+    }
+
+    override def setBinaryStream(parameterIndex: Int, x: InputStream): Unit = {
+        record(parameterIndex, StatementInterceptor.StreamValue)
+        super.setBinaryStream(parameterIndex, x)
+    }
+
+    override def setBinaryStream(parameterIndex: Int, x: InputStream, length: Int): Unit = {
+        record(parameterIndex, StatementInterceptor.StreamValue)
+        super.setBinaryStream(parameterIndex, x, length)
+    }
+
+    override def setCharacterStream(parameterIndex: Int, reader: Reader): Unit = {
+        record(parameterIndex, StatementInterceptor.StreamValue)
+        super.setCharacterStream(parameterIndex, reader)
+    }
+
+    override def setCharacterStream(parameterIndex: Int, reader: Reader, length: Int): Unit = {
+        record(parameterIndex, StatementInterceptor.StreamValue)
+        super.setCharacterStream(parameterIndex, reader, length)
+    }
+
+    override def setCharacterStream(parameterIndex: Int, reader: Reader, length: Long): Unit = {
+        record(parameterIndex, StatementInterceptor.StreamValue)
+        super.setCharacterStream(parameterIndex, reader, length)
+    }
+
+    override def setNCharacterStream(parameterIndex: Int, value: Reader): Unit = {
+        record(parameterIndex, StatementInterceptor.StreamValue)
+        super.setNCharacterStream(parameterIndex, value)
+    }
+
+    override def setNCharacterStream(parameterIndex: Int, value: Reader, length: Long): Unit = {
+        record(parameterIndex, StatementInterceptor.StreamValue)
+        super.setNCharacterStream(parameterIndex, value, length)
+    }
+
+    override def setBlob(parameterIndex: Int, x: java.sql.Blob): Unit = {
+        record(parameterIndex, StatementInterceptor.StreamValue)
+        super.setBlob(parameterIndex, x)
+    }
+
+    override def setBlob(parameterIndex: Int, inputStream: InputStream): Unit = {
+        record(parameterIndex, StatementInterceptor.StreamValue)
+        super.setBlob(parameterIndex, inputStream)
+    }
+
+    override def setBlob(parameterIndex: Int, inputStream: InputStream, length: Long): Unit = {
+        record(parameterIndex, StatementInterceptor.StreamValue)
+        super.setBlob(parameterIndex, inputStream, length)
+    }
+
+    override def setClob(parameterIndex: Int, x: java.sql.Clob): Unit = {
+        record(parameterIndex, StatementInterceptor.StreamValue)
+        super.setClob(parameterIndex, x)
+    }
+
+    override def setClob(parameterIndex: Int, reader: Reader): Unit = {
+        record(parameterIndex, StatementInterceptor.StreamValue)
+        super.setClob(parameterIndex, reader)
+    }
+
+    override def setClob(parameterIndex: Int, reader: Reader, length: Long): Unit = {
+        record(parameterIndex, StatementInterceptor.StreamValue)
+        super.setClob(parameterIndex, reader, length)
+    }
+
+    override def setNClob(parameterIndex: Int, value: java.sql.NClob): Unit = {
+        record(parameterIndex, StatementInterceptor.StreamValue)
+        super.setNClob(parameterIndex, value)
+    }
+
+    override def setNClob(parameterIndex: Int, reader: Reader): Unit = {
+        record(parameterIndex, StatementInterceptor.StreamValue)
+        super.setNClob(parameterIndex, reader)
+    }
+
+    override def setNClob(parameterIndex: Int, reader: Reader, length: Long): Unit = {
+        record(parameterIndex, StatementInterceptor.StreamValue)
+        super.setNClob(parameterIndex, reader, length)
+    }
+
+    override def setSQLXML(parameterIndex: Int, xmlObject: java.sql.SQLXML): Unit = {
+        record(parameterIndex, StatementInterceptor.StreamValue)
+        super.setSQLXML(parameterIndex, xmlObject)
+    }
+
+    override def executeQuery(): ResultSet =
+        chain.execute(sql, this)(super.executeQuery())
+
+    override def executeUpdate(): Int =
+        chain.execute(sql, this)(super.executeUpdate())
+
+    override def executeLargeUpdate(): Long =
+        chain.execute(sql, this)(super.executeLargeUpdate())
+
+    override def execute(): Boolean =
+        chain.execute(sql, this)(super.execute())
+
+    override def executeBatch(): Array[Int] =
+        chain.execute(sql, this)(super.executeBatch())
+
+    override def executeLargeBatch(): Array[Long] =
+        chain.execute(sql, this)(super.executeLargeBatch())
+
+    override def close(): Unit =
+        chain.close(sql, this)(super.close())
+}
+
+private[jdbc] class InterceptingCallableStatement(session: Connection, stmt: CallableStatement, val sql: String, chain: InterceptorChain)
+    extends DelegateCallableStatement[Connection](session, stmt) {
+
+    override protected def wrapResultSet(rs: ResultSet): ResultSet =
+        if (rs eq null) null else new InterceptingResultSet(this, rs, sql, chain)
+
+    override def executeQuery(): ResultSet =
+        chain.execute(sql, this)(super.executeQuery())
+
+    override def executeUpdate(): Int =
+        chain.execute(sql, this)(super.executeUpdate())
+
+    override def executeLargeUpdate(): Long =
+        chain.execute(sql, this)(super.executeLargeUpdate())
+
+    override def execute(): Boolean =
+        chain.execute(sql, this)(super.execute())
+
+    override def executeBatch(): Array[Int] =
+        chain.execute(sql, this)(super.executeBatch())
+
+    override def executeLargeBatch(): Array[Long] =
+        chain.execute(sql, this)(super.executeLargeBatch())
+
+    override def close(): Unit =
+        chain.close(sql, this)(super.close())
+}
+
+private[jdbc] final class InterceptingResultSet(stmt: Statement, rs: ResultSet, sql: String, chain: InterceptorChain)
+    extends DelegateResultSet(stmt, rs) {
+
+    private var rows: Long = 0L
+    private var nanos: Long = 0L
+    private var started: Boolean = false
+    private var finished: Boolean = false
+
+    override def next(): Boolean = {
+        if (!started) {
+            started = true
+            chain.beforeFetch(sql, statement)
+        }
+        val start = System.nanoTime
+        val more = resultSet.next()
+        nanos += System.nanoTime - start
+        if (more) rows += 1 else finish()
+        more
+    }
+
+    private def finish(): Unit =
+        if (started && !finished) {
+            finished = true
+            chain.afterFetch(sql, statement, rows, nanos)
+        }
+
+    override def close(): Unit =
+        try finish() finally super.close()
+}
@@ -0,0 +1,167 @@
+package darts.lib.sql.jdbc
+
+import java.io.{DataInput, DataOutput}
+
+/**
+  * Binary encoding of the values of a `Type`, used to persist
+  * bindings in a `WriteBehindSink` journal. Codecs exist for all
+  * scalar primitives and the `java.time` types, for
+  * deduplicated strings, and for decorators of these; streams,
+  * lists and arrays cannot be journalled.
+  */
+
+trait JournalCodec[T] {
+
+    def write(out: DataOutput, value: T): Unit
+
+    def read(in: DataInput): T
+}
+
+object JournalCodec {
+
+    /**
+      * Returns the codec for the given type, or throws an
+      * `IllegalArgumentException`, if the type cannot be journalled.
+      */
+
+    def forType[T](descriptor: ParameterType[T]): JournalCodec[T] =
+        lookup(descriptor).asInstanceOf[JournalCodec[T]]
+
+    private def lookup(descriptor: ParameterType[_]): JournalCodec[_] = descriptor match {
+        case Type.Byte => ByteCodec
+        case Type.Short => ShortCodec
+        case Type.Int => IntCodec
+        case Type.Long => LongCodec
+        case Type.Float => FloatCodec
+        case Type.Double => DoubleCodec
+        case Type.Boolean => BooleanCodec
+        case Type.String => StringCodec
+        case _: DeduplicatedString => StringCodec
+        case Type.BigDecimal => BigDecimalCodec
+        case Type.Bytes => BytesCodec
+        case Type.Timestamp => TimestampCodec
+        case Type.Date => DateCodec
+        case Type.Time => TimeCodec
+        case Type.Instant => InstantCodec
+        case Type.LocalDate => LocalDateCodec
+        case Type.LocalTime => LocalTimeCodec
+        case Type.LocalDateTime => LocalDateTimeCodec
+        case decorator: TypeDecorator[_, _] => new DecoratorCodec(decorator.asInstanceOf[TypeDecorator[Any, Any]])
+        case other => throw new IllegalArgumentException("values of " + other + " cannot be journalled")
+    }
+
+    private final class DecoratorCodec[S, T](decorator: TypeDecorator[S, T]) extends JournalCodec[T] {
+
+        private val stored = forType(decorator.storedType)
+
+        def write(out: DataOutput, value: T): Unit = stored.write(out, decorator.store(value))
+
+        def read(in: DataInput): T = decorator.load(stored.read(in))
+    }
+
+    private object ByteCodec extends JournalCodec[Byte] {
+        def write(out: DataOutput, value: Byte): Unit = out.writeByte(value)
+        def read(in: DataInput): Byte = in.readByte()
+    }
+
+    private object ShortCodec extends JournalCodec[Short] {
+        def write(out: DataOutput, value: Short): Unit = out.writeShort(value)
+        def read(in: DataInput): Short = in.readShort()
+    }
+
+    private object IntCodec extends JournalCodec[Int] {
+        def write(out: DataOutput, value: Int): Unit = out.writeInt(value)
+        def read(in: DataInput): Int = in.readInt()
+    }
+
+    private object LongCodec extends JournalCodec[Long] {
+        def write(out: DataOutput, value: Long): Unit = out.writeLong(value)
+        def read(in: DataInput): Long = in.readLong()
+    }
+
+    private object FloatCodec extends JournalCodec[Float] {
+        def write(out: DataOutput, value: Float): Unit = out.writeFloat(value)
+        def read(in: DataInput): Float = in.readFloat()
+    }
+
+    private object DoubleCodec extends JournalCodec[Double] {
+        def write(out: DataOutput, value: Double): Unit = out.writeDouble(value)
+        def read(in: DataInput): Double = in.readDouble()
+    }
+
+    private object BooleanCodec extends JournalCodec[Boolean] {
+        def write(out: DataOutput, value: Boolean): Unit = out.writeBoolean(value)
+        def read(in: DataInput): Boolean = in.readBoolean()
+    }
+
+    private object StringCodec extends JournalCodec[String] {
+        def write(out: DataOutput, value: String): Unit = BytesCodec.write(out, value.getBytes("UTF-8"))
+        def read(in: DataInput): String = new String(BytesCodec.read(in), "UTF-8")
+    }
+
+    private object BytesCodec extends JournalCodec[Array[Byte]] {
+        def write(out: DataOutput, value: Array[Byte]): Unit = {
+            out.writeInt(value.length)
+            out.write(value)
+        }
+        def read(in: DataInput): Array[Byte] = {
+            val bytes = new Array[Byte](in.readInt())
+            in.readFully(bytes)
+            bytes
+        }
+    }
+
+    private object BigDecimalCodec extends JournalCodec[BigDecimal] {
+        def write(out: DataOutput, value: BigDecimal): Unit = StringCodec.write(out, value.bigDecimal.toString)
+        def read(in: DataInput): BigDecimal = BigDecimal(new java.math.BigDecimal(StringCodec.read(in)))
+    }
+
+    private object TimestampCodec extends JournalCodec[java.sql.Timestamp] {
+        def write(out: DataOutput, value: java.sql.Timestamp): Unit = {
+            out.writeLong(value.getTime)
+            out.writeInt(value.getNanos)
+        }
+        def read(in: DataInput): java.sql.Timestamp = {
+            val value = new java.sql.Timestamp(in.readLong())
+            value.setNanos(in.readInt())
+            value
+        }
+    }
+
+    private object DateCodec extends JournalCodec[java.sql.Date] {
+        def write(out: DataOutput, value: java.sql.Date): Unit = out.writeLong(value.getTime)
+        def read(in: DataInput): java.sql.Date = new java.sql.Date(in.readLong())
+    }
+
+    private object TimeCodec extends JournalCodec[java.sql.Time] {
+        def write(out: DataOutput, value: java.sql.Time): Unit = out.writeLong(value.getTime)
+        def read(in: DataInput): java.sql.Time = new java.sql.Time(in.readLong())
+    }
+
+    private object InstantCodec extends JournalCodec[java.time.Instant] {
+        def write(out: DataOutput, value: java.time.Instant): Unit = {
+            out.writeLong(value.getEpochSecond)
+            out.writeInt(value.getNano)
+        }
+        def read(in: DataInput): java.time.Instant = java.time.Instant.ofEpochSecond(in.readLong(), in.readInt())
+    }
+
+    private object LocalDateCodec extends JournalCodec[java.time.LocalDate] {
+        def write(out: DataOutput, value: java.time.LocalDate): Unit = out.writeLong(value.toEpochDay)
+        def read(in: DataInput): java.time.LocalDate = java.time.LocalDate.ofEpochDay(in.readLong())
+    }
+
+    private object LocalTimeCodec extends JournalCodec[java.time.LocalTime] {
+        def write(out: DataOutput, value: java.time.LocalTime): Unit = out.writeLong(value.toNanoOfDay)
+        def read(in: DataInput): java.time.LocalTime = java.time.LocalTime.ofNanoOfDay(in.readLong())
+    }
+
+    private object LocalDateTimeCodec extends JournalCodec[java.time.LocalDateTime] {
+        def write(out: DataOutput, value: java.time.LocalDateTime): Unit = {
+            LocalDateCodec.write(out, value.toLocalDate)
+            LocalTimeCodec.write(out, value.toLocalTime)
+        }
+        def read(in: DataInput): java.time.LocalDateTime =
+            java.time.LocalDateTime.of(LocalDateCodec.read(in), LocalTimeCodec.read(in))
+    }
+}
@@ -0,0 +1,172 @@
+package darts.lib.sql.jdbc
+
+import java.sql.{Connection, ResultSet}
+
+import scala.collection.immutable.VectorBuilder
+
+/**
+  * One component of a keyset pagination key. The `expression` names
+  * a column of the base query's result; `extract` obtains the value
+  * of that column from a row already read. Key columns must not be
+  * nullable, and the combination of all key parts of a query must be
+  * unique for each row.
+  */
+
+final case class KeyPart[T, K](val expression: String, val descriptor: Type[K], val extract: (T) => K, val descending: Boolean = false) {
+
+    private[jdbc] lazy val slot: Slot[K] = Slot("keyset:" + expression, descriptor)
+
+    private[jdbc] def binding(row: T): Bindings.Binding[K] = slot(extract(row))
+
+    private[jdbc] def order: String = if (descending) expression + " DESC" else expression
+
+    private[jdbc] def operator: String = if (descending) " < " else " > "
+}
+
+object KeyPart {
+
+    def ascending[T, K](expression: String)(extract: (T) => K)(implicit descriptor: Type[K]): KeyPart[T, K] =
+        KeyPart(expression, descriptor, extract, false)
+
+    def descending[T, K](expression: String)(extract: (T) => K)(implicit descriptor: Type[K]): KeyPart[T, K] =
+        KeyPart(expression, descriptor, extract, true)
+}
+
+/**
+  * Traverses the result of a query in pages of `pageSize` rows using
+  * keyset pagination: instead of skipping rows with `OFFSET`, each
+  * page after the first one is restricted to the rows, whose key is
+  * past the key of the last row of the previous page, i.e., for a key
+  * `(k1, k2)` the condition is `k1 > ? OR (k1 = ? AND k2 > ?)`. With an
+  * index on the key columns, every page costs about the same, and no
+  * result set is held open between pages.
+  *
+  * The base fragment is wrapped as a sub-query, so it may contain its
+  * own `WHERE` clause and slots, but should not be ordered or limited
+  * itself. The generated statements use `LIMIT`, and the text of the
+  * statement for the pages after the first is the same for all pages.
+  */
+
+final class KeysetQuery[T](val base: Fragment, val keys: Seq[KeyPart[T, _]], val pageSize: Int, private val reader: (ResultSet) => T) {
+
+    require(keys.nonEmpty, "at least one key part is required")
+    require(pageSize > 0, "the page size must be positive")
+
+    lazy val firstPage: Template = pageTemplate(Fragment.Empty)
+
+    lazy val nextPage: Template = {
+        val terms = keys.indices.map { i =>
+            val equal = keys.take(i).flatMap(k => List[Fragment](TextFrag(k.expression + " = "), k.slot, TextFrag(" AND ")))
+            val greater = List[Fragment](TextFrag(keys(i).expression + keys(i).operator), keys(i).slot)
+            Fragment.concatenate((TextFrag("(") +: equal) ++ greater :+ TextFrag(")"): _*)
+        }
+        val predicate = terms.tail.foldLeft(terms.head)((left, right) => Fragment.concatenate(left, TextFrag(" OR "), right))
+        pageTemplate(Fragment.concatenate(TextFrag(" WHERE "), predicate))
+    }
+
+    private def pageTemplate(condition: Fragment): Template =
+        new Template(Fragment.concatenate(
+            TextFrag("SELECT * FROM ("), base, TextFrag(") keyset_page"), condition,
+            TextFrag(keys.map(_.order).mkString(" ORDER BY ", ", ", " LIMIT " + pageSize))))
+
+    /**
+      * Reads the page following the row `after`, or the first page,
+      * if `after` is `None`.
+      */
+
+    def fetchPage(connection: Connection, bindings: Bindings, after: Option[T]): IndexedSeq[T] =
+        after match {
+            case None => read(firstPage, connection, bindings)
+            case Some(row) => read(nextPage, connection, bindings ++ keys.map(_.binding(row)))
+        }
+
+    private def read(template: Template, connection: Connection, bindings: Bindings): IndexedSeq[T] =
+        template.executeQuery(connection, bindings) { rs =>
+            val buf = new VectorBuilder[T]
+            while (rs.next) buf += reader(rs)
+            buf.result()
+        }
+
+    /**
+      * Returns the pages as a lazy iterator. All pages are read using
+      * the given connection.
+      */
+
+    def pages(connection: Connection, bindings: Bindings = Bindings.Empty): Iterator[IndexedSeq[T]] =
+        new KeysetQuery.Pages[T](pageSize, after => fetchPage(connection, bindings, after))
+
+    /**
+      * Returns the pages as a lazy iterator. Each page is read in its
+      * own (short) session obtained from `factory`.
+      */
+
+    def pages(factory: SessionFactory, char: SessionCharacteristics, bindings: Bindings): Iterator[IndexedSeq[T]] =
+        new KeysetQuery.Pages[T](pageSize, after => factory.withSession(char) { session => fetchPage(session, bindings, after) })
+
+    def cursor(connection: Connection, bindings: Bindings = Bindings.Empty): Cursor[T] =
+        new KeysetQuery.PageCursor(pages(connection, bindings))
+
+    def cursor(factory: SessionFactory, char: SessionCharacteristics, bindings: Bindings): Cursor[T] =
+        new KeysetQuery.PageCursor(pages(factory, char, bindings))
+
+    override def toString: String =
+        "KeysetQuery(" + base.text + "," + keys.map(_.order) + "," + pageSize + ")"
+}
+
+object KeysetQuery {
+
+    def apply[T](base: Fragment, pageSize: Int, keys: KeyPart[T, _]*)(reader: (ResultSet) => T): KeysetQuery[T] =
+        new KeysetQuery(base, keys, pageSize, reader)
+
+    private final class Pages[T](pageSize: Int, fetch: (Option[T]) => IndexedSeq[T])
+        extends Iterator[IndexedSeq[T]] {
+
+        private var last: Option[T] = None
+        private var pending: IndexedSeq[T] = null
+        private var exhausted: Boolean = false
+
+        def hasNext: Boolean = {
+            if ((pending eq null) && !exhausted) {
+                val page = fetch(last)
+                if (page.isEmpty) exhausted = true
+                else {
+                    pending = page
+                    last = Some(page.last)
+                    if (page.size < pageSize) exhausted = true
+                }
+            }
+            pending ne null
+        }
+
+        def next(): IndexedSeq[T] = {
+            if (!hasNext) throw new NoSuchElementException
+            val page = pending
+            pending = null
+            page
+        }
+    }
+
+    private final class PageCursor[T](pages: Iterator[IndexedSeq[T]]) extends Cursor[T] {
+
+        private var page: IndexedSeq[T] = IndexedSeq.empty
+        private var position: Int = 0
+        private var available: Boolean = false
+
+        def next: Boolean = {
+            if (position + 1 < page.size) {
+                position += 1
+                available = true
+            } else if (pages.hasNext) {
+                page = pages.next()
+                position = 0
+                available = true
+            } else
+                available = false
+            available
+        }
+
+        def get: T =
+            if (!available) throw new IllegalStateException
+            else page(position)
+    }
+}
@@ -0,0 +1,102 @@
+package darts.lib.sql.jdbc
+
+import java.sql.{ResultSet, SQLException}
+
+/**
+  * Row, whose columns are decoded only when they are accessed. The raw
+  * column values (as returned by `ResultSet.getObject`) are captured
+  * when the row is read, so a lazy row remains usable after the cursor,
+  * which produced it, has been advanced or closed, and can be collected
+  * via `toList` and friends; only the conversion into the columns'
+  * types is deferred. Note, that this limits the savings: every column
+  * is still fetched from the driver, which materializes strings and
+  * boxes numbers for `getObject`, so a lazy row only saves the cost of
+  * the conversions (and of the `Option`s) for the columns not used.
+  * LOB and array values are captured as the driver's handles, which
+  * are usually only valid within the transaction. Each column is
+  * decoded at most once per row; repeated accesses return the value
+  * decoded first. Columns are matched by equality, so constants like
+  * `val Name = column[String]("name")` should be preferred over
+  * creating new column instances for each access.
+  */
+
+final class LazyRow private[jdbc](val layout: ColumnLayout, private val raw: Array[AnyRef]) {
+
+    private var keys = new Array[Column[_]](4)
+    private var values = new Array[Option[_]](4)
+    private var count: Int = 0
+
+    def apply[T](column: Column[T]): Option[T] =
+        value(column)
+
+    def apply[T](reader: NotNullReader[T]): T =
+        reader.forcer(value(reader.reader))
+
+    private def indexOf(column: Column[_]): Int = {
+        val index = column match {
+            case IndexedColumn(index, _) => index
+            case NamedColumn(name, _) => layout.indexOf(name)
+        }
+        if (index < 1 || index > raw.length) throw new SQLException("no such column: " + column)
+        index
+    }
+
+    private def value[T](column: Column[T]): Option[T] = synchronized {
+        var i = 0
+        while (i < count) {
+            val key = keys(i)
+            if ((key eq column) || key == column) return values(i).asInstanceOf[Option[T]]
+            i += 1
+        }
+        val decoded = column.descriptor.fromObject(raw(indexOf(column) - 1))
+        if (count == keys.length) {
+            keys = java.util.Arrays.copyOf(keys.asInstanceOf[Array[AnyRef]], count * 2).asInstanceOf[Array[Column[_]]]
+            values = java.util.Arrays.copyOf(values.asInstanceOf[Array[AnyRef]], count * 2).asInstanceOf[Array[Option[_]]]
+        }
+        keys(count) = column
+        values(count) = decoded
+        count += 1
+        decoded
+    }
+}
+
+/**
+  * Cursor producing `LazyRow`s. The raw values of all columns in the
+  * query's column layout are captured for each row read, whether the
+  * row's consumer uses them or not.
+  */
+
+final class LazyCursor private[jdbc](private val resultSet: ResultSet, val layout: ColumnLayout)
+    extends BasicCursor[LazyRow](resultSet) {
+
+    protected def read(rs: ResultSet): LazyRow = {
+        val raw = new Array[AnyRef](layout.size)
+        var i = 0
+        while (i < raw.length) {
+            raw(i) = rs.getObject(i + 1)
+            i += 1
+        }
+        new LazyRow(layout, raw)
+    }
+}
+
+/**
+  * Query yielding `LazyRow`s, for wide rows of which only a few
+  * columns are used by any given consumer.
+  */
+
+final class LazyQuery(override val template: Template)
+    extends Query[LazyRow] with ApplyableQuery[LazyRow] {
+
+    def this(frag: Fragment) = this(new Template(frag))
+
+    protected def makeRowReader(rs: ResultSet): Cursor[LazyRow] =
+        new LazyCursor(rs, template.layoutOf(rs))
+}
+
+object LazyQuery {
+
+    def apply(frag: Fragment): LazyQuery = new LazyQuery(new Template(frag))
+
+    def apply(frag: Template): LazyQuery = new LazyQuery(frag)
+}
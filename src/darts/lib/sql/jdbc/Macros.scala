@@ -0,0 +1,125 @@
+package darts.lib.sql.jdbc
+
+import _root_.darts.lib.sql.{jdbc => lib}
+
+import scala.reflect.macros.blackbox
+
+/**
+  * Compile-time derivation of row decoders and encoders for case
+  * classes. The generated code refers to the `Type` instances found
+  * by implicit search at the call site; values of the standard
+  * primitive types are read and bound using the primitive JDBC
+  * accessors directly.
+  */
+
+final class Macros(val c: blackbox.Context) {
+
+    import c.universe._
+
+    private final case class Field(val name: TermName, val label: String, val tpe: c.universe.Type)
+
+    private def fieldsOf(tpe: c.universe.Type): List[Field] = {
+        val sym = tpe.typeSymbol
+        if (!sym.isClass || !sym.asClass.isCaseClass)
+            c.abort(c.enclosingPosition, tpe + " is not a case class")
+        sym.typeSignature
+        val ctor = tpe.decl(termNames.CONSTRUCTOR).alternatives.collectFirst({
+            case m: MethodSymbol if m.isPrimaryConstructor => m
+        }).getOrElse(c.abort(c.enclosingPosition, tpe + " has no primary constructor"))
+        val typeParams = sym.asClass.typeParams
+        ctor.paramLists.headOption.getOrElse(Nil).map { param =>
+            val label = param.annotations.collectFirst({
+                case a if a.tree.tpe <:< typeOf[lib.columnName] =>
+                    a.tree.children.tail.collectFirst({ case Literal(Constant(name: String)) => name })
+            }).flatten.getOrElse(param.name.decodedName.toString)
+            Field(param.name.toTermName, label, param.typeSignature.substituteTypes(typeParams, tpe.typeArgs))
+        }
+    }
+
+    private def descriptorOf(tpe: c.universe.Type): Tree = {
+        val wanted = appliedType(typeOf[lib.Type[_]].typeConstructor, List(tpe))
+        val found = c.inferImplicitValue(wanted, silent = true)
+        if (found.isEmpty) c.abort(c.enclosingPosition, "no implicit " + wanted + " available")
+        found
+    }
+
+    private def optionalElement(tpe: c.universe.Type): Option[c.universe.Type] =
+        if (tpe.typeConstructor =:= typeOf[Option[_]].typeConstructor) Some(tpe.typeArgs.head)
+        else None
+
+    private lazy val primitives: List[(c.universe.Type, TermName, TermName)] = List(
+        (typeOf[lib.Type.Int.type], TermName("int"), TermName("setInt")),
+        (typeOf[lib.Type.Long.type], TermName("long"), TermName("setLong")),
+        (typeOf[lib.Type.Short.type], TermName("short"), TermName("setShort")),
+        (typeOf[lib.Type.Byte.type], TermName("byte"), TermName("setByte")),
+        (typeOf[lib.Type.Double.type], TermName("double"), TermName("setDouble")),
+        (typeOf[lib.Type.Float.type], TermName("float"), TermName("setFloat")),
+        (typeOf[lib.Type.Boolean.type], TermName("boolean"), TermName("setBoolean")))
+
+    private def primitiveReader(descriptor: Tree): Option[TermName] =
+        primitives.collectFirst({ case (t, reader, _) if descriptor.tpe <:< t => reader })
+
+    private def primitiveSetter(descriptor: Tree): Option[TermName] =
+        primitives.collectFirst({ case (t, _, setter) if descriptor.tpe <:< t => setter })
+
+    def deriveRowDecoder[T: c.WeakTypeTag]: Tree = {
+        val tpe = weakTypeOf[T]
+        val fields = fieldsOf(tpe)
+        val rs = TermName(c.freshName("rs"))
+        val indices = TermName(c.freshName("indices"))
+        val args = fields.zipWithIndex.map { case (field, i) =>
+            optionalElement(field.tpe) match {
+                case Some(element) =>
+                    q"${descriptorOf(element)}.readValue($rs, $indices($i))"
+                case None =>
+                    val descriptor = descriptorOf(field.tpe)
+                    primitiveReader(descriptor) match {
+                        case Some(reader) => q"_root_.darts.lib.sql.jdbc.RowDecoder.$reader($rs, $indices($i))"
+                        case None => q"$descriptor.readRequired($rs, $indices($i))"
+                    }
+            }
+        }
+        val labels = fields.map(f => Literal(Constant(f.label)))
+        q"""
+            new _root_.darts.lib.sql.jdbc.RowDecoder[$tpe] {
+                val columns: _root_.scala.collection.immutable.IndexedSeq[_root_.java.lang.String] =
+                    _root_.scala.collection.immutable.Vector(..$labels)
+                def decode($rs: _root_.java.sql.ResultSet, $indices: _root_.scala.Array[_root_.scala.Int]): $tpe =
+                    new $tpe(..$args)
+            }
+        """
+    }
+
+    def deriveRowEncoder[T: c.WeakTypeTag]: Tree = {
+        val tpe = weakTypeOf[T]
+        val fields = fieldsOf(tpe)
+        val stmt = TermName(c.freshName("stmt"))
+        val index = TermName(c.freshName("index"))
+        val field = TermName(c.freshName("field"))
+        val value = TermName(c.freshName("value"))
+        val cases = fields.zipWithIndex.map { case (f, i) =>
+            val access = q"$value.${f.name}"
+            val body = optionalElement(f.tpe) match {
+                case Some(element) =>
+                    q"${descriptorOf(element)}.bindValue($stmt, $index, $access)"
+                case None =>
+                    val descriptor = descriptorOf(f.tpe)
+                    primitiveSetter(descriptor) match {
+                        case Some(setter) => q"$stmt.$setter($index, $access)"
+                        case None => q"$descriptor.bindRequired($stmt, $index, $access)"
+                    }
+            }
+            cq"$i => $body"
+        }
+        val fallback = cq"_ => throw new _root_.java.lang.IndexOutOfBoundsException(_root_.java.lang.String.valueOf($field))"
+        val labels = fields.map(f => Literal(Constant(f.label)))
+        q"""
+            new _root_.darts.lib.sql.jdbc.RowEncoder[$tpe] {
+                val fields: _root_.scala.collection.immutable.IndexedSeq[_root_.java.lang.String] =
+                    _root_.scala.collection.immutable.Vector(..$labels)
+                def bind($stmt: _root_.java.sql.PreparedStatement, $index: _root_.scala.Int, $field: _root_.scala.Int, $value: $tpe): _root_.scala.Unit =
+                    $field match { case ..${cases :+ fallback} }
+            }
+        """
+    }
+}
@@ -0,0 +1,126 @@
+package darts.lib.sql.jdbc
+
+import java.sql.{Connection, DatabaseMetaData, ResultSet}
+import java.util.concurrent.{ConcurrentHashMap, TimeUnit}
+import javax.sql.rowset.{CachedRowSet, RowSetFactory, RowSetProvider}
+
+import darts.lib.sql.jdbc.delegate.DelegateDatabaseMetaData
+
+/**
+  * Cache for the result sets returned by `DatabaseMetaData`, shared by
+  * all sessions of a factory (see `BasicSessionFactory.metaDataCache`).
+  * Results are materialised into `CachedRowSet`s once, and every hit
+  * hands out an independent copy sharing the cached rows. Entries expire
+  * `ttl` milliseconds after they were loaded (never, if `ttl` is not
+  * positive), and may be invalidated explicitly, e.g., after migrations.
+  *
+  * Only the catalogue queries are cached; all other metadata calls go
+  * to the driver as usual.
+  */
+
+final class MetaDataCache(val ttl: Long) {
+
+    import MetaDataCache._
+
+    private val entries = new ConcurrentHashMap[List[Any], Entry]
+    private val ttlNanos = if (ttl <= 0L) Long.MaxValue else TimeUnit.MILLISECONDS.toNanos(ttl)
+
+    private[jdbc] def apply(key: List[Any])(load: => ResultSet): ResultSet = {
+        val now = System.nanoTime
+        val known = entries.get(key)
+        val rows =
+            if ((known ne null) && now - known.loadedAt < ttlNanos) known.rows
+            else {
+                val rs = load
+                try {
+                    val fresh = rowSets.createCachedRowSet()
+                    fresh.populate(rs)
+                    entries.put(key, new Entry(fresh, now))
+                    fresh
+                } finally
+                    rs.close()
+            }
+        rows.synchronized(rows.createShared())
+    }
+
+    def size: Int = entries.size
+
+    def invalidate(): Unit =
+        entries.clear()
+
+    /**
+      * Drops all entries, whose arguments mention the given table name
+      * (case-insensitively). Entries for patterns, which might match the
+      * table, are not detected, so `invalidate()` is the safer choice
+      * after schema changes involving wildcards.
+      */
+
+    def invalidate(table: String): Unit = {
+        val it = entries.keySet.iterator
+        while (it.hasNext) {
+            if (it.next.exists {
+                case s: String => s.equalsIgnoreCase(table)
+                case _ => false
+            }) it.remove()
+        }
+    }
+}
+
+object MetaDataCache {
+
+    private final class Entry(val rows: CachedRowSet, val loadedAt: Long)
+
+    private lazy val rowSets: RowSetFactory = RowSetProvider.newFactory()
+}
+
+private[jdbc] final class CachingDatabaseMetaData(session: Connection, underlying: DatabaseMetaData, cache: MetaDataCache)
+    extends DelegateDatabaseMetaData[Connection](session, underlying) {
+
+    override def getTables(catalog: String, schemaPattern: String, tableNamePattern: String, types: Array[String]): ResultSet =
+        cache(List("getTables", catalog, schemaPattern, tableNamePattern, Option(types).map(_.toList)))(super.getTables(catalog, schemaPattern, tableNamePattern, types))
+
+    override def getSchemas: ResultSet =
+        cache(List("getSchemas"))(super.getSchemas)
+
+    override def getSchemas(catalog: String, schemaPattern: String): ResultSet =
+        cache(List("getSchemas", catalog, schemaPattern))(super.getSchemas(catalog, schemaPattern))
+
+    override def getCatalogs: ResultSet =
+        cache(List("getCatalogs"))(super.getCatalogs)
+
+    override def getTableTypes: ResultSet =
+        cache(List("getTableTypes"))(super.getTableTypes)
+
+    override def getColumns(catalog: String, schemaPattern: String, tableNamePattern: String, columnNamePattern: String): ResultSet =
+        cache(List("getColumns", catalog, schemaPattern, tableNamePattern, columnNamePattern))(super.getColumns(catalog, schemaPattern, tableNamePattern, columnNamePattern))
+
+    override def getPrimaryKeys(catalog: String, schema: String, table: String): ResultSet =
+        cache(List("getPrimaryKeys", catalog, schema, table))(super.getPrimaryKeys(catalog, schema, table))
+
+    override def getImportedKeys(catalog: String, schema: String, table: String): ResultSet =
+        cache(List("getImportedKeys", catalog, schema, table))(super.getImportedKeys(catalog, schema, table))
+
+    override def getExportedKeys(catalog: String, schema: String, table: String): ResultSet =
+        cache(List("getExportedKeys", catalog, schema, table))(super.getExportedKeys(catalog, schema, table))
+
+    override def getCrossReference(parentCatalog: String, parentSchema: String, parentTable: String, foreignCatalog: String, foreignSchema: String, foreignTable: String): ResultSet =
+        cache(List("getCrossReference", parentCatalog, parentSchema, parentTable, foreignCatalog, foreignSchema, foreignTable))(super.getCrossReference(parentCatalog, parentSchema, parentTable, foreignCatalog, foreignSchema, foreignTable))
+
+    override def getIndexInfo(catalog: String, schema: String, table: String, unique: Boolean, approximate: Boolean): ResultSet =
+        cache(List("getIndexInfo", catalog, schema, table, unique, approximate))(super.getIndexInfo(catalog, schema, table, unique, approximate))
+
+    override def getBestRowIdentifier(catalog: String, schema: String, table: String, scope: Int, nullable: Boolean): ResultSet =
+        cache(List("getBestRowIdentifier", catalog, schema, table, scope, nullable))(super.getBestRowIdentifier(catalog, schema, table, scope, nullable))
+
+    override def getVersionColumns(catalog: String, schema: String, table: String): ResultSet =
+        cache(List("getVersionColumns", catalog, schema, table))(super.getVersionColumns(catalog, schema, table))
+
+    override def getTypeInfo: ResultSet =
+        cache(List("getTypeInfo"))(super.getTypeInfo)
+
+    override def getProcedures(catalog: String, schemaPattern: String, procedureNamePattern: String): ResultSet =
+        cache(List("getProcedures", catalog, schemaPattern, procedureNamePattern))(super.getProcedures(catalog, schemaPattern, procedureNamePattern))
+
+    override def getFunctions(catalog: String, schemaPattern: String, functionNamePattern: String): ResultSet =
+        cache(List("getFunctions", catalog, schemaPattern, functionNamePattern))(super.getFunctions(catalog, schemaPattern, functionNamePattern))
+}
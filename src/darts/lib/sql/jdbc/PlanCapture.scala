@@ -0,0 +1,205 @@
+package darts.lib.sql.jdbc
+
+import java.sql.{ResultSet, Statement, Types}
+import java.util.concurrent.{ConcurrentHashMap, Executor}
+
+/**
+  * Statement interceptor, which keeps latency statistics per statement
+  * text, and captures the execution plan of statements slower than
+  * `threshold` milliseconds. The plan is obtained by running the
+  * dialect's `EXPLAIN` for the statement, with the same parameter
+  * values, on a separate read-only session from `factory`, using
+  * `executor`. At most one plan is captured per statement text within
+  * `interval` milliseconds; the most recent plans of up to `capacity`
+  * statements are retained.
+  *
+  * Statements bound from streams cannot be explained, and are only
+  * counted. Plan capture failures are counted, too, but otherwise
+  * ignored.
+  */
+
+final class PlanCapture(val factory: SessionFactory,
+                        val executor: Executor,
+                        val threshold: Long,
+                        val interval: Long = 60000L,
+                        val capacity: Int = 256,
+                        val dialect: PlanCapture.Dialect = PlanCapture.Dialect.Default)
+    extends StatementInterceptor {
+
+    import PlanCapture._
+
+    private val stats = new ConcurrentHashMap[String, Stats]
+    private val plans = new java.util.LinkedHashMap[String, Plan](16, 0.75f, true) {
+        override def removeEldestEntry(eldest: java.util.Map.Entry[String, Plan]): Boolean =
+            size > capacity
+    }
+    private val thresholdNanos = threshold * 1000000L
+    private val intervalNanos = interval * 1000000L
+
+    override def capturesParameters: Boolean = true
+
+    override def afterExecute(sql: String, statement: Statement, nanos: Long, failure: Throwable): Unit =
+        if (!capturing.get) {
+            val s = statsFor(sql)
+            val capture = s.record(nanos, nanos >= thresholdNanos && (failure eq null), intervalNanos)
+            if (capture) StatementInterceptor.parametersOf(statement) match {
+                case Some(params) if !params.exists(_ eq StatementInterceptor.StreamValue) =>
+                    executor.execute(new Runnable {
+                        def run(): Unit = explain(sql, params, nanos, s)
+                    })
+                case _ => ()
+            }
+        }
+
+    private def statsFor(sql: String): Stats = {
+        val known = stats.get(sql)
+        if (known ne null) known
+        else {
+            val fresh = new Stats
+            val present = stats.putIfAbsent(sql, fresh)
+            if (present ne null) present else fresh
+        }
+    }
+
+    private def explain(sql: String, params: IndexedSeq[AnyRef], nanos: Long, s: Stats): Unit = {
+        capturing.set(true)
+        try {
+            val text = factory.withSession(SessionOpenMode.ReadOnly + SessionAutoCommit.Enabled) { session =>
+                val stmt = session.prepareStatement(dialect.explain(sql))
+                try {
+                    var index = 1
+                    params.foreach { value =>
+                        if ((value eq null) || (value eq StatementInterceptor.NullValue)) stmt.setNull(index, Types.NULL)
+                        else stmt.setObject(index, value)
+                        index += 1
+                    }
+                    val rs = stmt.executeQuery()
+                    try dialect.plan(rs) finally rs.close()
+                } finally
+                    stmt.close()
+            }
+            val plan = Plan(sql, text, params, nanos, System.currentTimeMillis)
+            plans.synchronized(plans.put(sql, plan))
+        } catch {
+            case e: Exception => s.failed()
+        } finally
+            capturing.set(false)
+    }
+
+    /**
+      * Returns the most recently captured plan for the given statement
+      * text, if any.
+      */
+
+    def plan(sql: String): Option[Plan] =
+        Option(plans.synchronized(plans.get(sql)))
+
+    def statistics(sql: String): Option[Statistics] =
+        Option(stats.get(sql)).map(_.snapshot(sql))
+
+    /**
+      * Returns the statistics of all statements seen so far, together
+      * with their captured plans, slowest (by maximum latency) first.
+      */
+
+    def report: Seq[(Statistics, Option[Plan])] = {
+        import scala.collection.JavaConverters._
+        stats.entrySet.asScala.toVector
+            .map(e => e.getValue.snapshot(e.getKey))
+            .sortBy(-_.maxNanos)
+            .map(s => (s, plan(s.sql)))
+    }
+
+    def reset(): Unit = {
+        stats.clear()
+        plans.synchronized(plans.clear())
+    }
+}
+
+object PlanCapture {
+
+    final case class Statistics(val sql: String, val executions: Long, val totalNanos: Long, val maxNanos: Long, val slow: Long, val failedCaptures: Long) {
+
+        def meanNanos: Long = if (executions == 0) 0L else totalNanos / executions
+    }
+
+    final case class Plan(val sql: String, val text: String, val parameters: IndexedSeq[AnyRef], val nanos: Long, val capturedAt: Long)
+
+    /**
+      * How to explain a statement in a particular SQL dialect.
+      */
+
+    trait Dialect {
+
+        def explain(sql: String): String
+
+        def plan(rs: ResultSet): String = {
+            val width = rs.getMetaData.getColumnCount
+            val buffer = new StringBuilder
+            while (rs.next) {
+                var column = 1
+                while (column <= width) {
+                    if (column > 1) buffer.append('\t')
+                    buffer.append(rs.getString(column))
+                    column += 1
+                }
+                buffer.append('\n')
+            }
+            buffer.toString
+        }
+    }
+
+    object Dialect {
+
+        /**
+          * Prefixes the statement with `EXPLAIN`, as understood by
+          * PostgreSQL, MySQL, H2 and SQLite (sort of).
+          */
+
+        val Default: Dialect = prefixed("EXPLAIN ")
+
+        def prefixed(prefix: String): Dialect = new Dialect {
+            def explain(sql: String): String = prefix + sql
+        }
+    }
+
+    private val capturing = new ThreadLocal[Boolean] {
+        override def initialValue(): Boolean = false
+    }
+
+    private final class Stats {
+
+        private var executions: Long = 0L
+        private var totalNanos: Long = 0L
+        private var maxNanos: Long = 0L
+        private var slow: Long = 0L
+        private var failures: Long = 0L
+        private var lastCapture: Long = 0L
+        private var captured: Boolean = false
+
+        def record(nanos: Long, isSlow: Boolean, interval: Long): Boolean = synchronized {
+            executions += 1
+            totalNanos += nanos
+            if (nanos > maxNanos) maxNanos = nanos
+            if (!isSlow) false
+            else {
+                slow += 1
+                val now = System.nanoTime
+                if (captured && now - lastCapture < interval) false
+                else {
+                    captured = true
+                    lastCapture = now
+                    true
+                }
+            }
+        }
+
+        def failed(): Unit = synchronized {
+            failures += 1
+        }
+
+        def snapshot(sql: String): Statistics = synchronized {
+            Statistics(sql, executions, totalNanos, maxNanos, slow, failures)
+        }
+    }
+}
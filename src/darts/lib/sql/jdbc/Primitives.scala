@@ -0,0 +1,327 @@
+package darts.lib.sql.jdbc
+
+import java.sql.ResultSet
+
+/**
+  * Set of `Long`s using open addressing with linear probing, storing
+  * its elements unboxed in a single array. Zero is tracked separately,
+  * as it marks free slots.
+  */
+
+final class LongHashSet(initialCapacity: Int = 16) {
+
+    private var keys = new Array[Long](LongHashSet.tableSize(initialCapacity))
+    private var mask = keys.length - 1
+    private var used: Int = 0
+    private var hasZero: Boolean = false
+
+    def size: Int = if (hasZero) used + 1 else used
+
+    def isEmpty: Boolean = size == 0
+
+    def contains(key: Long): Boolean =
+        if (key == 0L) hasZero
+        else {
+            var slot = LongHashSet.hash(key) & mask
+            while (true) {
+                val present = keys(slot)
+                if (present == key) return true
+                if (present == 0L) return false
+                slot = (slot + 1) & mask
+            }
+            false
+        }
+
+    /**
+      * Adds the key, answering `true`, if it was not present before.
+      */
+
+    def add(key: Long): Boolean =
+        if (key == 0L) {
+            val added = !hasZero
+            hasZero = true
+            added
+        } else {
+            var slot = LongHashSet.hash(key) & mask
+            while (true) {
+                val present = keys(slot)
+                if (present == key) return false
+                if (present == 0L) {
+                    keys(slot) = key
+                    used += 1
+                    if (2 * used > keys.length) grow()
+                    return true
+                }
+                slot = (slot + 1) & mask
+            }
+            false
+        }
+
+    def +=(key: Long): this.type = {
+        add(key)
+        this
+    }
+
+    def foreach[U](fn: Long => U): Unit = {
+        if (hasZero) fn(0L)
+        var i = 0
+        while (i < keys.length) {
+            if (keys(i) != 0L) fn(keys(i))
+            i += 1
+        }
+    }
+
+    def toArray: Array[Long] = {
+        val result = new Array[Long](size)
+        var n = 0
+        foreach { key => result(n) = key; n += 1 }
+        result
+    }
+
+    private def grow(): Unit = {
+        val old = keys
+        keys = new Array[Long](old.length * 2)
+        mask = keys.length - 1
+        used = 0
+        var i = 0
+        while (i < old.length) {
+            if (old(i) != 0L) add(old(i))
+            i += 1
+        }
+    }
+
+    override def toString: String =
+        "LongHashSet(size=" + size + ")"
+}
+
+object LongHashSet {
+
+    private[jdbc] def tableSize(capacity: Int): Int = {
+        var n = 16
+        while (n < 2 * capacity) n *= 2
+        n
+    }
+
+    private[jdbc] def hash(key: Long): Int = {
+        val h = key * 0x9E3779B97F4A7C15L
+        (h ^ (h >>> 32)).toInt
+    }
+}
+
+/**
+  * Map with `Long` keys using open addressing with linear probing.
+  * Keys are stored unboxed; zero is tracked separately, as it marks
+  * free slots.
+  */
+
+final class LongHashMap[V](initialCapacity: Int = 16) {
+
+    private var keys = new Array[Long](LongHashSet.tableSize(initialCapacity))
+    private var values = new Array[AnyRef](keys.length)
+    private var mask = keys.length - 1
+    private var used: Int = 0
+    private var hasZero: Boolean = false
+    private var zeroValue: AnyRef = null
+
+    def size: Int = if (hasZero) used + 1 else used
+
+    def isEmpty: Boolean = size == 0
+
+    private def slotOf(key: Long): Int = {
+        var slot = LongHashSet.hash(key) & mask
+        while (true) {
+            val present = keys(slot)
+            if (present == key || present == 0L) return slot
+            slot = (slot + 1) & mask
+        }
+        -1
+    }
+
+    def contains(key: Long): Boolean =
+        if (key == 0L) hasZero
+        else keys(slotOf(key)) == key
+
+    def get(key: Long): Option[V] =
+        if (key == 0L) {
+            if (hasZero) Some(zeroValue.asInstanceOf[V]) else None
+        } else {
+            val slot = slotOf(key)
+            if (keys(slot) == key) Some(values(slot).asInstanceOf[V]) else None
+        }
+
+    def apply(key: Long): V =
+        if (key == 0L) {
+            if (hasZero) zeroValue.asInstanceOf[V] else throw new NoSuchElementException("key not found: 0")
+        } else {
+            val slot = slotOf(key)
+            if (keys(slot) == key) values(slot).asInstanceOf[V]
+            else throw new NoSuchElementException("key not found: " + key)
+        }
+
+    def getOrElse[V1 >: V](key: Long, default: => V1): V1 =
+        if (key == 0L) {
+            if (hasZero) zeroValue.asInstanceOf[V] else default
+        } else {
+            val slot = slotOf(key)
+            if (keys(slot) == key) values(slot).asInstanceOf[V] else default
+        }
+
+    /**
+      * Returns the value for the key, adding the one computed by
+      * `create` first, if the key is not present.
+      */
+
+    def getOrElseUpdate(key: Long, create: => V): V =
+        if (key == 0L) {
+            if (!hasZero) {
+                zeroValue = create.asInstanceOf[AnyRef]
+                hasZero = true
+            }
+            zeroValue.asInstanceOf[V]
+        } else {
+            val slot = slotOf(key)
+            if (keys(slot) == key) values(slot).asInstanceOf[V]
+            else {
+                val value = create
+                insert(slot, key, value)
+                value
+            }
+        }
+
+    def update(key: Long, value: V): Unit =
+        if (key == 0L) {
+            zeroValue = value.asInstanceOf[AnyRef]
+            hasZero = true
+        } else {
+            val slot = slotOf(key)
+            if (keys(slot) == key) values(slot) = value.asInstanceOf[AnyRef]
+            else insert(slot, key, value)
+        }
+
+    private def insert(slot: Int, key: Long, value: V): Unit = {
+        keys(slot) = key
+        values(slot) = value.asInstanceOf[AnyRef]
+        used += 1
+        if (2 * used > keys.length) grow()
+    }
+
+    def keysArray: Array[Long] = {
+        val result = new Array[Long](size)
+        var n = 0
+        if (hasZero) {
+            result(0) = 0L
+            n = 1
+        }
+        var i = 0
+        while (i < keys.length) {
+            if (keys(i) != 0L) {
+                result(n) = keys(i)
+                n += 1
+            }
+            i += 1
+        }
+        result
+    }
+
+    def foreach[U](fn: (Long, V) => U): Unit = {
+        if (hasZero) fn(0L, zeroValue.asInstanceOf[V])
+        var i = 0
+        while (i < keys.length) {
+            if (keys(i) != 0L) fn(keys(i), values(i).asInstanceOf[V])
+            i += 1
+        }
+    }
+
+    private def grow(): Unit = {
+        val oldKeys = keys
+        val oldValues = values
+        keys = new Array[Long](oldKeys.length * 2)
+        values = new Array[AnyRef](keys.length)
+        mask = keys.length - 1
+        used = 0
+        var i = 0
+        while (i < oldKeys.length) {
+            if (oldKeys(i) != 0L) {
+                val slot = slotOf(oldKeys(i))
+                keys(slot) = oldKeys(i)
+                values(slot) = oldValues(i)
+                used += 1
+            }
+            i += 1
+        }
+    }
+
+    override def toString: String =
+        "LongHashMap(size=" + size + ")"
+}
+
+/**
+  * Readers extracting a column as an unboxed primitive. The common
+  * primitive types are read with the matching `ResultSet` getter; other
+  * types (e.g., decorators) go through the descriptor.
+  */
+
+private[jdbc] abstract class LongReader {
+    def read(rs: ResultSet, index: Int): Long
+}
+
+private[jdbc] abstract class IntReader {
+    def read(rs: ResultSet, index: Int): Int
+}
+
+private[jdbc] abstract class DoubleReader {
+    def read(rs: ResultSet, index: Int): Double
+}
+
+private[jdbc] object Primitives {
+
+    def indexOf(rs: ResultSet, column: Column[_]): Int = column match {
+        case IndexedColumn(index, _) => index
+        case NamedColumn(name, _) => rs.findColumn(name)
+    }
+
+    private def checked(rs: ResultSet, index: Int): Unit =
+        if (rs.wasNull) throw Type.nullValue(index)
+
+    def longReader(descriptor: Type[_]): LongReader = descriptor match {
+        case Type.Long => new LongReader {
+            def read(rs: ResultSet, index: Int): Long = { val v = rs.getLong(index); checked(rs, index); v }
+        }
+        case Type.Int | Type.Short | Type.Byte => new LongReader {
+            def read(rs: ResultSet, index: Int): Long = { val v = rs.getInt(index); checked(rs, index); v }
+        }
+        case other => new LongReader {
+            def read(rs: ResultSet, index: Int): Long = other.readRequired(rs, index) match {
+                case n: java.lang.Number => n.longValue
+                case v => throw new ClassCastException("cannot read " + v + " as Long")
+            }
+        }
+    }
+
+    def intReader(descriptor: Type[_]): IntReader = descriptor match {
+        case Type.Int | Type.Short | Type.Byte => new IntReader {
+            def read(rs: ResultSet, index: Int): Int = { val v = rs.getInt(index); checked(rs, index); v }
+        }
+        case other => new IntReader {
+            def read(rs: ResultSet, index: Int): Int = other.readRequired(rs, index) match {
+                case n: java.lang.Number => n.intValue
+                case v => throw new ClassCastException("cannot read " + v + " as Int")
+            }
+        }
+    }
+
+    def doubleReader(descriptor: Type[_]): DoubleReader = descriptor match {
+        case Type.Double | Type.Float => new DoubleReader {
+            def read(rs: ResultSet, index: Int): Double = { val v = rs.getDouble(index); checked(rs, index); v }
+        }
+        case Type.Long | Type.Int | Type.Short | Type.Byte => new DoubleReader {
+            def read(rs: ResultSet, index: Int): Double = { val v = rs.getLong(index); checked(rs, index); v.toDouble }
+        }
+        case other => new DoubleReader {
+            def read(rs: ResultSet, index: Int): Double = other.readRequired(rs, index) match {
+                case n: java.lang.Number => n.doubleValue
+                case v => throw new ClassCastException("cannot read " + v + " as Double")
+            }
+        }
+    }
+}
@@ -6,10 +6,10 @@ import java.sql.{Connection, ResultSet}
 trait ApplyableQuery[T] {
     self: Query[T] =>
 
-    def apply(bindings: Bindings)(implicit connection: Connection): DeferredResult[T] =
+    def apply(bindings: Bindings)(implicit connection: Connection): StatementResult[T] =
         execute(connection, bindings)
 
-    def apply(bindings: Bindings.Binding[_]*)(implicit connection: Connection): DeferredResult[T] =
+    def apply(bindings: Bindings.Binding[_]*)(implicit connection: Connection): StatementResult[T] =
         execute(connection, Bindings(bindings: _*))
 }
 
@@ -17,16 +17,26 @@ abstract class Query[T] {
 
     def template: Template
 
-    protected def execute(connection: Connection, bindings: Bindings): DeferredResult[T] =
+    protected def execute(connection: Connection, bindings: Bindings): StatementResult[T] =
         new Results(connection, bindings)
 
     protected def makeRowReader(rs: ResultSet): Cursor[T]
 
+    private[jdbc] final def open(connection: Connection, bindings: Bindings): StatementResult[T] =
+        execute(connection, bindings)
+
     private final class Results(val connection: Connection, val parameters: Bindings)
-        extends DeferredResult[T] {
+        extends StatementResult[T] {
         override def scroll[U](fn: (Cursor[T]) => U): U = {
             template.executeQuery(connection, parameters) { rs => fn(makeRowReader(rs)) }
         }
+
+        override def scrollUntil[U](deadline: Deadline)(fn: (Cursor[T]) => U): U = {
+            template.executeQuery(connection, parameters, deadline) { rs => fn(makeRowReader(rs)) }
+        }
+
+        def scrollRows[U](deadline: Deadline)(fn: (ResultSet) => U): U =
+            template.executeQuery(connection, parameters, deadline)(fn)
     }
 
 }
@@ -53,6 +63,9 @@ trait ApplyableInsert[T] {
 
     def apply(bindings: Bindings.Binding[_]*)(implicit connection: Connection): Seq[T] =
         execute(connection, Bindings(bindings: _*))
+
+    def apply(bindings: Bindings, deadline: Deadline)(implicit connection: Connection): Seq[T] =
+        execute(connection, bindings, deadline)
 }
 
 abstract class Insert[T] {
@@ -64,6 +77,9 @@ abstract class Insert[T] {
     protected def execute(connection: Connection, bindings: Bindings): Seq[T] =
         template.executeInsert(connection, bindings)(fetchIds)
 
+    protected def execute(connection: Connection, bindings: Bindings, deadline: Deadline): Seq[T] =
+        template.executeInsert(connection, bindings, deadline)(fetchIds)
+
     override def toString: String =
         "Insert(" + template + ")"
 
@@ -0,0 +1,157 @@
+package darts.lib.sql.jdbc
+
+import java.sql.SQLException
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+  * Describes, when and how often a failed transaction is re-run.
+  * A failure is retryable, if the exception (or any exception in
+  * its cause/next chain) is a `SQLException`, whose SQLState is
+  * in `retryableStates`. All other failures are fatal. Delays grow
+  * exponentially from `initialBackoff` up to `maxBackoff` (both in
+  * milliseconds) and are jittered, so that competing transactions do
+  * not collide again in lock step. No further attempt is made once
+  * `maxAttempts` is reached or the next delay would exceed the total
+  * `budget` (in milliseconds) counted from the first attempt.
+  */
+
+final case class RetryPolicy(
+    val maxAttempts: Int = 5,
+    val initialBackoff: Long = 10L,
+    val maxBackoff: Long = 1000L,
+    val multiplier: Double = 2.0,
+    val budget: Long = 5000L,
+    val retryableStates: Set[String] = RetryPolicy.DefaultStates) {
+
+    def isRetryable(e: Throwable): Boolean = {
+        var seen = Set[Throwable]()
+        var pending = List(e)
+        while (pending.nonEmpty) {
+            val head = pending.head
+            pending = pending.tail
+            if ((head ne null) && !seen.contains(head)) {
+                seen += head
+                head match {
+                    case sql: SQLException =>
+                        if (sql.getSQLState != null && retryableStates.contains(sql.getSQLState)) return true
+                        pending = sql.getNextException :: pending
+                    case _ => ()
+                }
+                pending = head.getCause :: pending
+            }
+        }
+        false
+    }
+
+    def backoff(attempt: Int): Long = {
+        val ceiling = math.min(maxBackoff.toDouble, initialBackoff * math.pow(multiplier, attempt - 1)).toLong
+        val half = ceiling / 2
+        half + ThreadLocalRandom.current().nextLong(ceiling - half + 1)
+    }
+}
+
+object RetryPolicy {
+
+    /**
+      * SQLStates signalling, that the transaction has been rolled back
+      * by the server due to a conflict with a concurrent transaction
+      * and may succeed when run again: `40001` (serialization failure;
+      * also used for deadlock victims by MySQL, SQL Server, H2 and
+      * Derby) and `40P01` (deadlock detected, PostgreSQL).
+      */
+
+    val DefaultStates: Set[String] = Set("40001", "40P01")
+
+    val Default = RetryPolicy()
+}
+
+/**
+  * Runs blocks of code transactionally, re-running them when they
+  * fail with a retryable error according to the `policy`. The block
+  * may be executed more than once, so it should not have side-effects
+  * besides those on the database session it is given.
+  */
+
+final class TransactionRunner(val factory: SessionFactory, val policy: RetryPolicy = RetryPolicy.Default) {
+
+    private val transactions = new AtomicLong
+    private val attempts = new AtomicLong
+    private val retries = new AtomicLong
+    private val exhausted = new AtomicLong
+    private val fatal = new AtomicLong
+
+    def statistics: TransactionRunner.Statistics =
+        TransactionRunner.Statistics(transactions.get, attempts.get, retries.get, exhausted.get, fatal.get)
+
+    /**
+      * Opens a fresh session with the given characteristics for each
+      * attempt, and runs `fn` in a transaction on it.
+      */
+
+    def withTransaction[U](char: SessionCharacteristics = SessionCharacteristics.Default)(fn: (Session) => U): U =
+        retrying(factory.withSession(char) { session => session.transactionally(fn(session)) })
+
+    /**
+      * Runs `fn` in a transaction on the given session, which must not
+      * be in auto-commit mode. Failed attempts are rolled back before
+      * the block is re-run.
+      */
+
+    def transactionally[U](session: Session)(fn: => U): U =
+        retrying(session.transactionally(fn))
+
+    private def retrying[U](body: => U): U = {
+        val started = System.nanoTime
+        var attempt = 1
+        transactions.incrementAndGet()
+        while (true) {
+            attempts.incrementAndGet()
+            try {
+                return body
+            } catch {
+                case e: Exception if policy.isRetryable(e) =>
+                    val delay = policy.backoff(attempt)
+                    val elapsed = (System.nanoTime - started) / 1000000L
+                    if (attempt >= policy.maxAttempts || elapsed + delay > policy.budget) {
+                        exhausted.incrementAndGet()
+                        throw e
+                    }
+                    retries.incrementAndGet()
+                    pause(delay, e)
+                    attempt += 1
+                case e: Exception =>
+                    fatal.incrementAndGet()
+                    throw e
+            }
+        }
+        throw new AssertionError
+    }
+
+    private def pause(millis: Long, cause: Exception): Unit =
+        try Thread.sleep(millis) catch {
+            case _: InterruptedException =>
+                Thread.currentThread().interrupt()
+                throw cause
+        }
+
+    override def toString: String =
+        "TransactionRunner(" + factory + "," + policy + ")"
+}
+
+object TransactionRunner {
+
+    /**
+      * Snapshot of a runner's counters. `retries` counts re-runs after
+      * retryable failures, `exhausted` the transactions that failed
+      * with a retryable error but ran out of attempts or budget, and
+      * `fatal` the transactions that failed with a non-retryable error.
+      */
+
+    final case class Statistics(
+        val transactions: Long,
+        val attempts: Long,
+        val retries: Long,
+        val exhausted: Long,
+        val fatal: Long)
+}
@@ -0,0 +1,77 @@
+package darts.lib.sql.jdbc
+
+import java.sql.{Connection, SQLException}
+import java.util.concurrent.atomic.AtomicInteger
+import javax.sql.DataSource
+
+/**
+  * Session factory, which sends read-only sessions to a set of
+  * replica data sources and read-write sessions to the primary.
+  * Replicas are used round-robin; if a replica cannot provide a
+  * connection, the next one is tried, and if none can, the primary
+  * is used.
+  *
+  * If `readYourWritesWindow` (in milliseconds) is positive, a thread,
+  * which has completed a read-write session, is pinned to the primary
+  * for the given amount of time, i.e., its read-only sessions are
+  * routed to the primary as well, so that it sees its own writes even
+  * if the replicas are lagging behind. Code, which writes through
+  * other means, can pin the current thread explicitly by calling
+  * `markWritten`.
+  */
+
+abstract class RoutingSessionFactory
+    extends BasicSessionFactory {
+
+    protected def primary: DataSource
+
+    protected def replicas: IndexedSeq[DataSource]
+
+    protected def readYourWritesWindow: Long = 0L
+
+    private val counter = new AtomicInteger
+    private val lastWrite = new ThreadLocal[java.lang.Long]
+
+    protected def openConnection: Connection = primary.getConnection()
+
+    protected def openConnection(mode: SessionOpenMode): Connection =
+        if (mode == SessionOpenMode.ReadWrite || replicas.isEmpty || isPinned) openConnection
+        else openReplicaConnection
+
+    private def openReplicaConnection: Connection = {
+        val count = replicas.size
+        val start = (counter.getAndIncrement() & Int.MaxValue) % count
+        var i = 0
+        while (i < count) {
+            try {
+                return replicas((start + i) % count).getConnection()
+            } catch {
+                case _: SQLException => i += 1
+            }
+        }
+        openConnection
+    }
+
+    def markWritten(): Unit =
+        if (readYourWritesWindow > 0L) lastWrite.set(System.nanoTime)
+
+    def isPinned: Boolean = {
+        val last = lastWrite.get
+        if (last eq null) false
+        else if (System.nanoTime - last < readYourWritesWindow * 1000000L) true
+        else {
+            lastWrite.remove()
+            false
+        }
+    }
+
+    override def withSession[U](char: SessionCharacteristics)(fn: (Session) => U): U = {
+        val cnx = openConnection(char.openMode)
+        try {
+            fn(makeSession(char.configure(cnx)))
+        } finally {
+            cnx.close
+            if (char.openMode == SessionOpenMode.ReadWrite) markWritten()
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package darts.lib.sql.jdbc
+
+import java.sql.ResultSet
+
+import scala.language.experimental.macros
+
+/**
+  * Overrides the column label, from which a case class field is
+  * read by a derived `RowDecoder` (or bound by a derived encoder).
+  * By default, the field name is used.
+  */
+
+final class columnName(val name: String) extends scala.annotation.StaticAnnotation
+
+/**
+  * Decodes rows of a result set into values of type `T`. The column
+  * labels are resolved to indices once per result set (see `resolve`),
+  * and `decode` then reads the columns by index.
+  */
+
+trait RowDecoder[T] {
+
+    def columns: IndexedSeq[String]
+
+    def decode(rs: ResultSet, indices: Array[Int]): T
+}
+
+object RowDecoder {
+
+    /**
+      * Derives a decoder for the case class `T` at compile time. Each
+      * constructor parameter is read from the column labelled with the
+      * parameter's name (or the name given by a `columnName` annotation)
+      * using the implicit `Type` instance for the parameter's type.
+      * Parameters of type `Option[A]` are nullable and use the `Type`
+      * instance for `A`; all other parameters are read via primitive
+      * getters where possible, and fail on `NULL` values.
+      */
+
+    def derive[T]: RowDecoder[T] = macro Macros.deriveRowDecoder[T]
+
+    def resolve(rs: ResultSet, columns: IndexedSeq[String]): Array[Int] = {
+        val indices = new Array[Int](columns.size)
+        var i = 0
+        while (i < indices.length) {
+            indices(i) = rs.findColumn(columns(i))
+            i += 1
+        }
+        indices
+    }
+
+    /**
+      * Resolves the labels using the given layout, falling back to
+      * `findColumn` (which reports missing columns the driver's way)
+      * for labels not in the layout.
+      */
+
+    def resolve(layout: ColumnLayout, rs: ResultSet, columns: IndexedSeq[String]): Array[Int] = {
+        val indices = new Array[Int](columns.size)
+        var i = 0
+        while (i < indices.length) {
+            val index = layout.indexOf(columns(i))
+            indices(i) = if (index > 0) index else rs.findColumn(columns(i))
+            i += 1
+        }
+        indices
+    }
+
+    def byte(rs: ResultSet, index: Int): Byte = {
+        val raw = rs.getByte(index)
+        if (rs.wasNull) throw Type.nullValue(index) else raw
+    }
+
+    def short(rs: ResultSet, index: Int): Short = {
+        val raw = rs.getShort(index)
+        if (rs.wasNull) throw Type.nullValue(index) else raw
+    }
+
+    def int(rs: ResultSet, index: Int): Int = {
+        val raw = rs.getInt(index)
+        if (rs.wasNull) throw Type.nullValue(index) else raw
+    }
+
+    def long(rs: ResultSet, index: Int): Long = {
+        val raw = rs.getLong(index)
+        if (rs.wasNull) throw Type.nullValue(index) else raw
+    }
+
+    def float(rs: ResultSet, index: Int): Float = {
+        val raw = rs.getFloat(index)
+        if (rs.wasNull) throw Type.nullValue(index) else raw
+    }
+
+    def double(rs: ResultSet, index: Int): Double = {
+        val raw = rs.getDouble(index)
+        if (rs.wasNull) throw Type.nullValue(index) else raw
+    }
+
+    def boolean(rs: ResultSet, index: Int): Boolean = {
+        val raw = rs.getBoolean(index)
+        if (rs.wasNull) throw Type.nullValue(index) else raw
+    }
+}
+
+/**
+  * Query, whose rows are decoded by a `RowDecoder`. The decoder's
+  * column labels are resolved against the template's column layout,
+  * once for as long as the layout stays the same.
+  */
+
+final class DecodedQuery[T](override val template: Template, val decoder: RowDecoder[T])
+    extends Query[T] with ApplyableQuery[T] {
+
+    def this(frag: Fragment, decoder: RowDecoder[T]) = this(new Template(frag), decoder)
+
+    @volatile private var resolved: DecodedQuery.Resolution = null
+
+    protected def makeRowReader(rs: ResultSet): Cursor[T] =
+        new DecodedQuery.RowReader(rs, decoder, indices(rs))
+
+    private def indices(rs: ResultSet): Array[Int] = {
+        val layout = template.layoutOf(rs)
+        val known = resolved
+        if ((known ne null) && (known.layout eq layout)) known.indices
+        else {
+            val fresh = RowDecoder.resolve(layout, rs, decoder.columns)
+            resolved = new DecodedQuery.Resolution(layout, fresh)
+            fresh
+        }
+    }
+}
+
+object DecodedQuery {
+
+    def apply[T](template: Template)(implicit decoder: RowDecoder[T]): DecodedQuery[T] = new DecodedQuery(template, decoder)
+
+    def apply[T](template: Fragment)(implicit decoder: RowDecoder[T]): DecodedQuery[T] = new DecodedQuery(new Template(template), decoder)
+
+    private final class Resolution(val layout: ColumnLayout, val indices: Array[Int])
+
+    private final class RowReader[T](rs: ResultSet, decoder: RowDecoder[T], indices: Array[Int])
+        extends BasicCursor[T](rs) {
+        protected def read(rs: ResultSet): T = decoder.decode(rs, indices)
+    }
+}
@@ -0,0 +1,91 @@
+package darts.lib.sql.jdbc
+
+import java.sql.{Connection, PreparedStatement}
+
+import scala.language.experimental.macros
+
+/**
+  * Binds the fields of values of type `T` directly to statement
+  * parameters. `bind` binds field number `field` (an index into
+  * `fields`) of `value` to parameter `index`.
+  */
+
+trait RowEncoder[T] {
+
+    def fields: IndexedSeq[String]
+
+    def bind(stmt: PreparedStatement, index: Int, field: Int, value: T): Unit
+}
+
+object RowEncoder {
+
+    /**
+      * Derives an encoder for the case class `T` at compile time. Each
+      * constructor parameter is bound to the slots named like the
+      * parameter (or as given by a `column` annotation) using the
+      * implicit `Type` instance for the parameter's type. Parameters of
+      * type `Option[A]` are bound as `NULL` when empty; the standard
+      * primitive types are bound with the primitive JDBC setters.
+      */
+
+    def derive[T]: RowEncoder[T] = macro Macros.deriveRowEncoder[T]
+}
+
+/**
+  * Action, whose slots are bound from the fields of a value of type
+  * `T` by a `RowEncoder`, without building a `Bindings` map. The
+  * mapping from parameter positions to fields is computed once, when
+  * the action is created; every slot of the template must correspond
+  * to a field of the encoder. The action can still be executed with
+  * ordinary bindings as well.
+  */
+
+final class EncodedAction[T](override val template: Template, val encoder: RowEncoder[T])
+    extends Action {
+
+    def this(frag: Fragment, encoder: RowEncoder[T]) = this(new Template(frag), encoder)
+
+    require(!template.isExpanding, "expanding substitutions cannot be bound by an encoder")
+
+    private val substitutions = template.substitutions.toArray
+
+    private val plan: Array[Int] = substitutions.map({
+        case s: Slot[_] =>
+            val field = encoder.fields.indexOf(s.name)
+            if (field < 0) throw new IllegalArgumentException("no field for slot " + s.name + " in " + template)
+            field
+        case _ => -1
+    })
+
+    private def bind(stmt: PreparedStatement, value: T): Unit = {
+        var i = 0
+        while (i < plan.length) {
+            val field = plan(i)
+            if (field >= 0) encoder.bind(stmt, i + 1, field, value)
+            else substitutions(i).bindParameter(stmt, i + 1, Bindings.Empty)
+            i += 1
+        }
+    }
+
+    def apply(value: T)(implicit connection: Connection): Int =
+        executeWith(connection, value)
+
+    def batch(values: TraversableOnce[T], batchSize: Int = 1000)(implicit connection: Connection): Array[Int] =
+        executeBatchWith(connection, values.toIterator, batchSize)
+
+    def executeWith(connection: Connection, value: T): Int =
+        template.executeCommandWith(connection)(stmt => bind(stmt, value))
+
+    def executeBatchWith(connection: Connection, values: Iterator[T], batchSize: Int): Array[Int] =
+        template.executeBatchWith(connection, values, batchSize)(bind)
+
+    override def toString: String =
+        "EncodedAction(" + template + ")"
+}
+
+object EncodedAction {
+
+    def apply[T](template: Template)(implicit encoder: RowEncoder[T]): EncodedAction[T] = new EncodedAction(template, encoder)
+
+    def apply[T](template: Fragment)(implicit encoder: RowEncoder[T]): EncodedAction[T] = new EncodedAction(new Template(template), encoder)
+}
@@ -113,8 +113,41 @@ trait SessionFactory {
 abstract class BasicSessionFactory
     extends SessionFactory {
 
+    @volatile private var interceptors: List[StatementInterceptor] = Nil
+    @volatile private var metaData: Option[MetaDataCache] = None
+
     protected def openConnection: Connection
 
+    /**
+      * Registers an interceptor for all sessions opened from now on.
+      * Sessions opened while no interceptor is registered hand out the
+      * driver's statements and result sets without any wrapping, so
+      * their `getConnection` returns the driver's connection rather than
+      * the session; with interceptors, it returns the session, and a
+      * result set's `getStatement` returns the intercepting statement.
+      * Code, which needs the session, should be handed the session
+      * instead of recovering it from a statement.
+      */
+
+    def addInterceptor(interceptor: StatementInterceptor): Unit = synchronized {
+        interceptors = interceptors :+ interceptor
+    }
+
+    def removeInterceptor(interceptor: StatementInterceptor): Unit = synchronized {
+        interceptors = interceptors.filterNot(_ eq interceptor)
+    }
+
+    /**
+      * The cache shared by the `DatabaseMetaData` of all sessions of this
+      * factory, if any. A cache may also be shared between factories
+      * connected to the same database.
+      */
+
+    def metaDataCache: Option[MetaDataCache] = metaData
+
+    def metaDataCache_=(cache: Option[MetaDataCache]): Unit =
+        metaData = cache
+
     def withSession[U](char: SessionCharacteristics)(fn: (Session) => U): U = {
         val cnx = openConnection
         try {
@@ -133,6 +166,57 @@ abstract class BasicSessionFactory
 
         val adapters = new AdapterCache[Session](this)
 
+        private val chain = InterceptorChain.of(interceptors)
+
+        override def getMetaData: DatabaseMetaData = metaData match {
+            case Some(cache) => new CachingDatabaseMetaData(this, connection.getMetaData, cache)
+            case None => super.getMetaData
+        }
+
+        override protected def wrapStatement(stmt: Statement): Statement =
+            if (chain eq null) stmt else new InterceptingStatement(this, stmt, chain)
+
+        override protected def wrapPreparedStatement(stmt: PreparedStatement): PreparedStatement =
+            if (chain eq null) stmt else super.wrapPreparedStatement(stmt)
+
+        override protected def wrapCallableStatement(stmt: CallableStatement): CallableStatement =
+            if (chain eq null) stmt else super.wrapCallableStatement(stmt)
+
+        private def prepared(sql: String)(open: => PreparedStatement): PreparedStatement =
+            if (chain eq null) open
+            else new InterceptingPreparedStatement(this, chain.prepare(sql)(open), sql, chain)
+
+        override def prepareStatement(sql: String): PreparedStatement =
+            prepared(sql)(connection.prepareStatement(sql))
+
+        override def prepareStatement(sql: String, resultSetType: Int, resultSetConcurrency: Int): PreparedStatement =
+            prepared(sql)(connection.prepareStatement(sql, resultSetType, resultSetConcurrency))
+
+        override def prepareStatement(sql: String, resultSetType: Int, resultSetConcurrency: Int, resultSetHoldability: Int): PreparedStatement =
+            prepared(sql)(connection.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability))
+
+        override def prepareStatement(sql: String, autoGeneratedKeys: Int): PreparedStatement =
+            prepared(sql)(connection.prepareStatement(sql, autoGeneratedKeys))
+
+        override def prepareStatement(sql: String, columnIndexes: Array[Int]): PreparedStatement =
+            prepared(sql)(connection.prepareStatement(sql, columnIndexes))
+
+        override def prepareStatement(sql: String, columnNames: Array[String]): PreparedStatement =
+            prepared(sql)(connection.prepareStatement(sql, columnNames))
+
+        private def called(sql: String)(open: => CallableStatement): CallableStatement =
+            if (chain eq null) open
+            else new InterceptingCallableStatement(this, chain.prepare(sql)(open), sql, chain)
+
+        override def prepareCall(sql: String): CallableStatement =
+            called(sql)(connection.prepareCall(sql))
+
+        override def prepareCall(sql: String, resultSetType: Int, resultSetConcurrency: Int): CallableStatement =
+            called(sql)(connection.prepareCall(sql, resultSetType, resultSetConcurrency))
+
+        override def prepareCall(sql: String, resultSetType: Int, resultSetConcurrency: Int, resultSetHoldability: Int): CallableStatement =
+            called(sql)(connection.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability))
+
         override def isWrapperFor(c: Class[_]): Boolean =
             c.isInstance(this) || connection.isWrapperFor(c)
 
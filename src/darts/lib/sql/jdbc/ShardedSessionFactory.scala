@@ -0,0 +1,207 @@
+package darts.lib.sql.jdbc
+
+import java.sql.SQLTimeoutException
+import java.util.concurrent.{ArrayBlockingQueue, Executor, TimeUnit}
+import javax.sql.DataSource
+
+/**
+  * Provides sessions on a set of databases (shards), which hold
+  * disjoint parts of the same schema. A shard key is mapped to the
+  * index of the shard holding the data for that key by `shardOf`,
+  * which by default uses the key's hash code. Applications with a
+  * different placement scheme should override it.
+  *
+  * Besides routing by key, the factory can run the same query on
+  * all shards concurrently (scatter-gather). The shard queries are
+  * submitted to `executor`, which must be able to run all of them
+  * at the same time (otherwise, the gathering cursor may wait for
+  * a shard, which never gets started). Each shard streams its rows
+  * through a bounded buffer of `buffer` rows, so memory stays bounded
+  * no matter how many rows the shards return. The gathering cursor waits
+  * at most `shardTimeout` milliseconds for the next row of a shard, and
+  * fails with an `SQLTimeoutException` after that.
+  *
+  * As a plain `SessionFactory`, i.e., for sessions without a shard key,
+  * the factory provides sessions on the shard `defaultShard`, which
+  * is the first one unless overridden.
+  */
+
+abstract class ShardedSessionFactory[K]
+    extends SessionFactory {
+
+    protected def shards: IndexedSeq[DataSource]
+
+    protected def executor: Executor
+
+    protected def shardOf(key: K): Int =
+        (key.## & Int.MaxValue) % shards.size
+
+    protected def defaultShard: Int = 0
+
+    protected def shardTimeout: Long = 60000L
+
+    private lazy val factories: IndexedSeq[SessionFactory] =
+        shards.map(ds => new ShardSessionFactory(ds))
+
+    def shardCount: Int = shards.size
+
+    def shard(index: Int): SessionFactory = factories(index)
+
+    def forKey(key: K): SessionFactory = factories(shardOf(key))
+
+    def withSession[U](key: K, char: SessionCharacteristics)(fn: (Session) => U): U =
+        forKey(key).withSession(char)(fn)
+
+    def withSession[U](char: SessionCharacteristics)(fn: (Session) => U): U =
+        shard(defaultShard).withSession(char)(fn)
+
+    def openSession: Session =
+        shard(defaultShard).openSession
+
+    /**
+      * Runs `query` on all shards concurrently, and passes the
+      * concatenation of the results to `fn`. The rows of the first
+      * shard come first, followed by those of the second, etc.; the
+      * other shards keep running (up to the buffer capacity) while
+      * the caller consumes the rows of an earlier one. If a shard's
+      * query fails, the exception is rethrown from the cursor's
+      * `next` method, when the cursor reaches that shard.
+      */
+
+    def scatter[T, U](query: Query[T], bindings: Bindings = Bindings.Empty,
+                      char: SessionCharacteristics = SessionCharacteristics.Default,
+                      buffer: Int = 256)(fn: (Cursor[T]) => U): U =
+        scatterEach(query, bindings, char, buffer) { cursors => fn(Cursor.concat(cursors)) }
+
+    /**
+      * Like `scatter`, but for queries, whose results are sorted
+      * according to `ordering` (i.e., which have a matching `ORDER BY`
+      * clause). The shard results are merged, so that the cursor passed
+      * to `fn` yields all rows in sorted order.
+      */
+
+    def scatterSorted[T, U](query: Query[T], bindings: Bindings = Bindings.Empty,
+                            char: SessionCharacteristics = SessionCharacteristics.Default,
+                            buffer: Int = 256)(fn: (Cursor[T]) => U)(implicit ordering: Ordering[T]): U =
+        scatterEach(query, bindings, char, buffer) { cursors => fn(Cursor.merge(cursors)) }
+
+    /**
+      * Like `scatter`, but passes the per-shard cursors to `fn`
+      * individually (in shard order), so that the caller can combine
+      * them as it sees fit.
+      */
+
+    def scatterEach[T, U](query: Query[T], bindings: Bindings = Bindings.Empty,
+                          char: SessionCharacteristics = SessionCharacteristics.Default,
+                          buffer: Int = 256)(fn: (IndexedSeq[Cursor[T]]) => U): U = {
+
+        val channels = factories.indices.map(i => new ShardedSessionFactory.Channel[T](i, buffer, shardTimeout))
+
+        try {
+
+            for (i <- factories.indices) {
+                val factory = factories(i)
+                val channel = channels(i)
+                executor.execute(new Runnable {
+                    def run(): Unit = channel.produce {
+                        factory.withSession(char) { session =>
+                            query.open(session, bindings).scroll { cursor =>
+                                while (cursor.next && channel.offer(cursor.get)) ()
+                            }
+                        }
+                    }
+                })
+            }
+
+            fn(channels)
+
+        } finally
+            channels.foreach(_.cancel())
+    }
+
+    private final class ShardSessionFactory(protected val dataSource: DataSource)
+        extends DataSourceSessionFactory
+}
+
+object ShardedSessionFactory {
+
+    private case object End
+
+    private case object Null
+
+    private final case class Failure(val cause: Throwable)
+
+    /**
+      * Bounded hand-off between the thread running a shard's query
+      * and the consumer. The producer gives up, as soon as the
+      * consumer cancels the channel; the consumer gives up, if the
+      * producer does not deliver the next row within `timeout`
+      * milliseconds (e.g., because the executor never started it).
+      */
+
+    private final class Channel[T](shard: Int, capacity: Int, timeout: Long) extends Cursor[T] {
+
+        private val queue = new ArrayBlockingQueue[AnyRef](capacity)
+        @volatile private var cancelled: Boolean = false
+        private var current: T = _
+        private var available: Boolean = false
+        private var done: Boolean = false
+
+        def produce(body: => Unit): Unit =
+            try {
+                body
+                put(End)
+            } catch {
+                case e: Throwable => put(Failure(e))
+            }
+
+        def offer(value: T): Boolean =
+            put(if (value == null) Null else value.asInstanceOf[AnyRef])
+
+        private def put(item: AnyRef): Boolean = {
+            while (!cancelled)
+                if (queue.offer(item, 50, TimeUnit.MILLISECONDS)) return true
+            false
+        }
+
+        def cancel(): Unit = {
+            cancelled = true
+            queue.clear()
+        }
+
+        private def take(): AnyRef = {
+            val item = queue.poll(timeout, TimeUnit.MILLISECONDS)
+            if (item ne null) item
+            else {
+                done = true
+                available = false
+                throw new SQLTimeoutException("no result from shard " + shard + " within " + timeout + "ms")
+            }
+        }
+
+        def next: Boolean =
+            if (done) false
+            else take() match {
+                case End =>
+                    done = true
+                    available = false
+                    false
+                case Failure(e) =>
+                    done = true
+                    available = false
+                    throw e
+                case Null =>
+                    current = null.asInstanceOf[T]
+                    available = true
+                    true
+                case item =>
+                    current = item.asInstanceOf[T]
+                    available = true
+                    true
+            }
+
+        def get: T =
+            if (!available) throw new IllegalStateException
+            else current
+    }
+}
@@ -1,6 +1,7 @@
 package darts.lib.sql.jdbc
 
 import java.sql.{Connection, PreparedStatement, ResultSet, Statement}
+import java.util.concurrent.ConcurrentHashMap
 
 trait Resolver {
 
@@ -10,6 +11,10 @@ trait Resolver {
 trait Substitution[T] {
 
     def bindParameter(stmt: PreparedStatement, index: Int, bindings: Resolver): Unit
+
+    def parameterCount(bindings: Resolver): Int = 1
+
+    def isExpanding: Boolean = false
 }
 
 final class Template (val text: String, val substitutions: Seq[Substitution[_]]) {
@@ -22,75 +27,278 @@ final class Template (val text: String, val substitutions: Seq[Substitution[_]])
     override def toString: String =
         "Command(" + text + "," + substitutions + ")"
 
-    def executeQuery[U](connection: Connection, bindings: Resolver)(fn: (ResultSet) => U): U = {
+    lazy val isExpanding: Boolean =
+        substitutions.exists(_.isExpanding)
+
+    private lazy val expansions = new ConcurrentHashMap[List[Int], String]
+
+    @volatile private var layout: ColumnLayout = null
+    private lazy val validated = new java.util.WeakHashMap[Connection, ColumnLayout]
+
+    /**
+      * Returns the column layout of `rs`, a result of this template. The
+      * result's metadata is inspected only the first time the template
+      * is executed on a given connection: if it still has the same column
+      * labels and types in the same order as the layout captured before,
+      * that layout is reused, otherwise (e.g., for replicas returning the
+      * columns in a different order) it is captured anew. Later results
+      * on the same connection are assumed to have the same layout, so
+      * after a schema change, which alters the columns of a template in
+      * use (e.g., one with `SELECT *`), `invalidateLayout` must be called.
+      * Readers can compare layouts by identity to decide, whether their
+      * resolved indices are still valid.
+      */
+
+    def layoutOf(rs: ResultSet): ColumnLayout = {
+        val connection = connectionOf(rs)
+        val known = if (connection eq null) null else validated.synchronized(validated.get(connection))
+        if (known ne null) known
+        else {
+            val meta = rs.getMetaData
+            val shared = layout
+            val current = if ((shared ne null) && shared.matches(meta)) shared else ColumnLayout.of(meta)
+            layout = current
+            if (connection ne null) validated.synchronized(validated.put(connection, current))
+            current
+        }
+    }
+
+    private def connectionOf(rs: ResultSet): Connection = {
+        val stmt = rs.getStatement
+        if (stmt eq null) null else stmt.getConnection
+    }
+
+    def cachedLayout: Option[ColumnLayout] =
+        Option(layout)
+
+    /**
+      * Discards the captured layout, so that the metadata of the next
+      * result on each connection is inspected again.
+      */
+
+    def invalidateLayout(): Unit = {
+        validated.synchronized(validated.clear())
+        layout = null
+    }
+
+    /**
+      * Returns the statement text to use with the given bindings. For
+      * templates without expanding substitutions, this is simply `text`;
+      * otherwise, the parameter markers of the expanding substitutions
+      * are replaced by as many markers as the bound values require.
+      */
+
+    def textFor(bindings: Resolver): String =
+        if (!isExpanding) text
+        else {
+            val counts = substitutions.map(_.parameterCount(bindings)).toList
+            val known = expansions.get(counts)
+            if (known ne null) known
+            else {
+                val expanded = Template.expand(text, counts)
+                expansions.putIfAbsent(counts, expanded)
+                expanded
+            }
+        }
+
+    private def bindParameters(stmt: PreparedStatement, bindings: Resolver): Unit = {
+        var index = 1
+        substitutions.foreach((s) => {
+            s.bindParameter(stmt, index, bindings)
+            index += s.parameterCount(bindings)
+        })
+    }
+
+    def executeQuery[U](connection: Connection, bindings: Resolver)(fn: (ResultSet) => U): U =
+        executeQuery(connection, bindings, Deadline.None)(fn)
+
+    /**
+      * Executes the query under the given deadline, which covers both
+      * the execution and the processing of the result set by `fn`.
+      */
 
-        val stmt = connection.prepareStatement(text, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, ResultSet.CLOSE_CURSORS_AT_COMMIT)
+    def executeQuery[U](connection: Connection, bindings: Resolver, deadline: Deadline)(fn: (ResultSet) => U): U = {
+
+        val stmt = connection.prepareStatement(textFor(bindings), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, ResultSet.CLOSE_CURSORS_AT_COMMIT)
 
         try {
 
-            var index = 1
+            bindParameters(stmt, bindings)
 
-            substitutions.foreach((s) => {
-                s.bindParameter(stmt, index, bindings)
-                index += 1
-            })
+            deadline.guard(stmt) {
 
-            val rs = stmt.executeQuery()
+                val rs = stmt.executeQuery()
 
-            try {
+                try {
 
-                fn(rs)
+                    fn(rs)
 
-            } finally
-                rs.close
+                } finally
+                    rs.close
+            }
 
         } finally
             stmt.close
     }
 
-    def executeInsert[U](connection: Connection, bindings: Resolver)(fn: (ResultSet) => U): U = {
+    def executeInsert[U](connection: Connection, bindings: Resolver)(fn: (ResultSet) => U): U =
+        executeInsert(connection, bindings, Deadline.None)(fn)
+
+    /**
+      * Executes the insert under the given deadline, which covers both
+      * the execution and the processing of the generated keys by `fn`.
+      */
 
-        val stmt = connection.prepareStatement(text, Statement.RETURN_GENERATED_KEYS)
+    def executeInsert[U](connection: Connection, bindings: Resolver, deadline: Deadline)(fn: (ResultSet) => U): U = {
+
+        val stmt = connection.prepareStatement(textFor(bindings), Statement.RETURN_GENERATED_KEYS)
 
         try {
 
-            var index = 1
+            bindParameters(stmt, bindings)
 
-            substitutions.foreach((s) => {
-                s.bindParameter(stmt, index, bindings)
-                index += 1
-            })
+            deadline.guard(stmt) {
 
-            stmt.executeUpdate()
-            val rs = stmt.getGeneratedKeys()
+                stmt.executeUpdate()
+                val rs = stmt.getGeneratedKeys()
+
+                try {
+
+                    fn(rs)
+
+                } finally
+                    rs.close
+            }
+
+        } finally
+            stmt.close
+    }
+
+    def executeCommand(connection: Connection, bindings: Resolver): Int =
+        executeCommand(connection, bindings, Deadline.None)
 
-            try {
+    def executeCommand(connection: Connection, bindings: Resolver, deadline: Deadline): Int = {
 
-                fn(rs)
+        val stmt = connection.prepareStatement(textFor(bindings), Statement.NO_GENERATED_KEYS)
+
+        try {
 
-            } finally
-                rs.close
+            bindParameters(stmt, bindings)
+
+            deadline.guard(stmt)(stmt.executeUpdate())
 
         } finally
             stmt.close
     }
 
-    def executeCommand(connection: Connection, bindings: Resolver): Int = {
+    /**
+      * Executes the statement once, binding its parameters with
+      * `bind` instead of from a `Resolver`.
+      */
+
+    def executeCommandWith(connection: Connection)(bind: (PreparedStatement) => Unit): Int = {
+
+        if (isExpanding) throw new IllegalStateException("expanding templates need bindings: " + this)
 
         val stmt = connection.prepareStatement(text, Statement.NO_GENERATED_KEYS)
 
         try {
 
-            var index = 1
+            bind(stmt)
+            stmt.executeUpdate()
+
+        } finally
+            stmt.close
+    }
+
+    /**
+      * Executes the statement for each of the `rows` as a JDBC batch,
+      * sending at most `batchSize` rows per round trip, and returns
+      * the update counts of all rows.
+      */
 
-            substitutions.foreach((s) => {
-                s.bindParameter(stmt, index, bindings)
-                index += 1
+    def executeBatchWith[A](connection: Connection, rows: Iterator[A], batchSize: Int)(bind: (PreparedStatement, A) => Unit): Array[Int] = {
+
+        if (isExpanding) throw new IllegalStateException("expanding templates cannot be batched: " + this)
+
+        val stmt = connection.prepareStatement(text, Statement.NO_GENERATED_KEYS)
+
+        try {
+
+            val counts = new scala.collection.mutable.ArrayBuilder.ofInt
+            var pending = 0
+
+            rows.foreach((row) => {
+                bind(stmt, row)
+                stmt.addBatch()
+                pending += 1
+                if (pending >= batchSize) {
+                    counts ++= stmt.executeBatch()
+                    pending = 0
+                }
             })
 
-            stmt.executeUpdate()
+            if (pending > 0) counts ++= stmt.executeBatch()
+            counts.result()
 
         } finally
             stmt.close
     }
-}
\ No newline at end of file
+
+    def executeBatch(connection: Connection, rows: Iterator[Resolver], batchSize: Int): Array[Int] =
+        executeBatchWith(connection, rows, batchSize)(bindParameters)
+}
+
+object Template {
+
+    /**
+      * Replaces the n-th parameter marker in `text` by `counts(n)`
+      * comma-separated markers. Markers are the question marks outside
+      * of string literals, quoted identifiers and comments.
+      */
+
+    private def expand(text: String, counts: List[Int]): String = {
+        val buffer = new StringBuilder(text.length + 3 * counts.sum)
+        var pending = counts
+        var quote: Char = 0
+        var i = 0
+        while (i < text.length) {
+            val c = text.charAt(i)
+            if (quote == '*') {
+                buffer.append(c)
+                if (c == '*' && i + 1 < text.length && text.charAt(i + 1) == '/') {
+                    buffer.append('/')
+                    quote = 0
+                    i += 1
+                }
+            } else if (quote != 0) {
+                buffer.append(c)
+                if (c == quote) quote = 0
+            } else if (c == '\'' || c == '"') {
+                buffer.append(c)
+                quote = c
+            } else if (c == '-' && i + 1 < text.length && text.charAt(i + 1) == '-') {
+                buffer.append("--")
+                quote = '\n'
+                i += 1
+            } else if (c == '/' && i + 1 < text.length && text.charAt(i + 1) == '*') {
+                buffer.append("/*")
+                quote = '*'
+                i += 1
+            } else if (c == '?') {
+                if (pending.isEmpty) throw new IllegalStateException("more parameter markers than substitutions in " + text)
+                buffer.append('?')
+                var n = pending.head
+                while (n > 1) {
+                    buffer.append(", ?")
+                    n -= 1
+                }
+                pending = pending.tail
+            } else
+                buffer.append(c)
+            i += 1
+        }
+        if (pending.nonEmpty) throw new IllegalStateException("fewer parameter markers than substitutions in " + text)
+        buffer.toString
+    }
+}
@@ -0,0 +1,274 @@
+package darts.lib.sql.jdbc
+
+import java.sql.{Connection, PreparedStatement, ResultSet, Statement}
+import java.util.concurrent.{Callable, CopyOnWriteArrayList, Executor, FutureTask}
+
+/**
+  * Collects the templates of an application, so that they can be
+  * prepared ahead of their first use. Registration methods return their
+  * argument, which allows for
+  *
+  * {{{
+  * val ItemById = registry.registerQuery("item-by-id", SimpleQuery(...)(...))
+  * }}}
+  *
+  * Warming up prepares every registered template (and, if requested,
+  * asks the driver to describe its parameters and results, which makes
+  * most drivers round-trip to the server) and closes the statement
+  * again. This primes driver-side statement caches as well as the
+  * server's plan cache. Templates, which fail to prepare, are reported
+  * but do not abort the warm-up.
+  *
+  * Validation goes further, and checks each template against the
+  * schema: the number of parameters reported by the driver must match
+  * the template's substitutions, and the result must provide the
+  * columns registered with a query (or read by its `RowDecoder`).
+  */
+
+final class TemplateRegistry {
+
+    import TemplateRegistry._
+
+    private val registered = new CopyOnWriteArrayList[Entry]
+
+    def entries: Seq[Entry] = {
+        import scala.collection.JavaConverters._
+        registered.asScala.toVector
+    }
+
+    def register(name: String, template: Template, kind: Kind): Template = {
+        registered.add(Entry(name, template, kind))
+        template
+    }
+
+    def register(name: String, template: Template, kind: Kind, columns: Seq[Column[_]], labels: Seq[String]): Template = {
+        registered.add(Entry(name, template, kind, columns, labels))
+        template
+    }
+
+    def register(name: String, template: Template): Template =
+        register(name, template, Kind.Command)
+
+    /**
+      * Registers a query, together with the columns it expects in its
+      * results. The labels read by a `DecodedQuery` are picked up
+      * automatically.
+      */
+
+    def registerQuery[Q <: Query[_]](name: String, query: Q, columns: Column[_]*): Q = {
+        val labels = query match {
+            case decoded: DecodedQuery[_] => decoded.decoder.columns
+            case _ => Nil
+        }
+        register(name, query.template, Kind.Query, columns, labels)
+        query
+    }
+
+    def registerInsert[I <: Insert[_]](name: String, insert: I): I = {
+        register(name, insert.template, Kind.Insert)
+        insert
+    }
+
+    def registerAction[A <: Action](name: String, action: A): A = {
+        register(name, action.template, Kind.Command)
+        action
+    }
+
+    /**
+      * Prepares all registered templates on the given connection, one
+      * after the other. Use this from a pool's connection initialisation
+      * hook to warm up each connection as it is created.
+      */
+
+    def warmUp(connection: Connection, describe: Boolean): Report =
+        warmUp(connection, entries, describe)
+
+    /**
+      * Warms up `sessions` connections of the given factory in parallel.
+      * All sessions are opened up front (so that a pool has to hand out
+      * distinct connections), and then prepared concurrently using
+      * `executor`; the calling thread waits for completion. The report
+      * combines the outcomes of all connections.
+      */
+
+    def warmUp(factory: SessionFactory, sessions: Int, executor: Executor, describe: Boolean): Report = {
+        val all = entries
+        Report(acrossSessions(factory, executor, Vector.fill(sessions)(all)) { (connection, group) =>
+            group.map(entry => prepare(connection, entry, describe))
+        })
+    }
+
+    private def warmUp(connection: Connection, all: Seq[Entry], describe: Boolean): Report =
+        Report(all.map(entry => prepare(connection, entry, describe)))
+
+    def validate(connection: Connection): Validation =
+        Validation(entries.map(entry => check(connection, entry)))
+
+    /**
+      * Validates all registered templates, spreading them round-robin
+      * over `sessions` connections of the given factory, which are
+      * checked in parallel using `executor`.
+      */
+
+    def validate(factory: SessionFactory, sessions: Int, executor: Executor): Validation = {
+        val all = entries.toIndexedSeq
+        val count = math.max(1, math.min(sessions, all.size))
+        val groups = (0 until count).map(g => all.indices.filter(_ % count == g).map(all))
+        Validation(acrossSessions(factory, executor, groups) { (connection, group) =>
+            group.map(entry => check(connection, entry))
+        })
+    }
+
+    /**
+      * Opens one session per group up front (so that a pool has to hand
+      * out distinct connections), and runs `fn` for all groups
+      * concurrently using `executor`; the calling thread waits for
+      * completion.
+      */
+
+    private def acrossSessions[R](factory: SessionFactory, executor: Executor, groups: IndexedSeq[Seq[Entry]])(fn: (Connection, Seq[Entry]) => Seq[R]): Vector[R] = {
+        val opened = new scala.collection.mutable.ArrayBuffer[Session](groups.size)
+        try {
+            while (opened.size < groups.size) opened += factory.openSession
+            val tasks = opened.zip(groups).map { case (session, group) =>
+                new FutureTask[Seq[R]](new Callable[Seq[R]] {
+                    def call(): Seq[R] = fn(ReadOnly.configure(session), group)
+                })
+            }
+            tasks.foreach(executor.execute)
+            tasks.flatMap(_.get).toVector
+        } finally
+            opened.foreach(_.close())
+    }
+
+    private def check(connection: Connection, entry: Entry): Check = {
+        val start = System.nanoTime
+        try {
+            val stmt = entry.kind.prepare(connection, entry.template.text)
+            try {
+                val problems = new scala.collection.mutable.ArrayBuffer[String]
+                val expected = entry.template.substitutions.size
+                val actual = stmt.getParameterMetaData.getParameterCount
+                if (actual != expected) problems += "expected " + expected + " parameters, statement has " + actual
+                if (entry.kind == Kind.Query && (entry.columns.nonEmpty || entry.labels.nonEmpty)) {
+                    val meta = stmt.getMetaData
+                    if (meta ne null) {
+                        val width = meta.getColumnCount
+                        val present = (1 to width).map(i => meta.getColumnLabel(i).toLowerCase).toSet
+                        entry.columns.foreach {
+                            case IndexedColumn(index, _) =>
+                                if (index < 1 || index > width) problems += "column " + index + " not in result of " + width + " columns"
+                            case NamedColumn(name, _) =>
+                                if (!present(name.toLowerCase)) problems += "column '" + name + "' not in result"
+                        }
+                        entry.labels.foreach { name =>
+                            if (!present(name.toLowerCase)) problems += "column '" + name + "' not in result"
+                        }
+                    }
+                }
+                Check(entry, System.nanoTime - start, problems.toVector, None)
+            } finally
+                stmt.close()
+        } catch {
+            case e: Exception => Check(entry, System.nanoTime - start, Vector("failed: " + e), Some(e))
+        }
+    }
+
+    private def prepare(connection: Connection, entry: Entry, describe: Boolean): Outcome = {
+        val start = System.nanoTime
+        try {
+            val stmt = entry.kind.prepare(connection, entry.template.text)
+            try {
+                if (describe) {
+                    stmt.getParameterMetaData
+                    if (entry.kind == Kind.Query) stmt.getMetaData
+                }
+            } finally
+                stmt.close()
+            Outcome(entry, System.nanoTime - start, None)
+        } catch {
+            case e: Exception => Outcome(entry, System.nanoTime - start, Some(e))
+        }
+    }
+}
+
+object TemplateRegistry {
+
+    private val ReadOnly = SessionOpenMode.ReadOnly + SessionAutoCommit.Enabled
+
+    /**
+      * How a template is executed, which determines the statement
+      * options it is prepared with. Drivers generally cache statements
+      * per text and options, so warm-up has to match the options used
+      * by `Template`.
+      */
+
+    sealed trait Kind {
+        def prepare(connection: Connection, text: String): PreparedStatement
+    }
+
+    object Kind {
+
+        final case object Query extends Kind {
+            def prepare(connection: Connection, text: String): PreparedStatement =
+                connection.prepareStatement(text, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, ResultSet.CLOSE_CURSORS_AT_COMMIT)
+        }
+
+        final case object Insert extends Kind {
+            def prepare(connection: Connection, text: String): PreparedStatement =
+                connection.prepareStatement(text, Statement.RETURN_GENERATED_KEYS)
+        }
+
+        final case object Command extends Kind {
+            def prepare(connection: Connection, text: String): PreparedStatement =
+                connection.prepareStatement(text, Statement.NO_GENERATED_KEYS)
+        }
+    }
+
+    final case class Entry(val name: String, val template: Template, val kind: Kind, val columns: Seq[Column[_]] = Nil, val labels: Seq[String] = Nil)
+
+    final case class Outcome(val entry: Entry, val nanos: Long, val failure: Option[Throwable]) {
+
+        def succeeded: Boolean = failure.isEmpty
+    }
+
+    final case class Report(val outcomes: Seq[Outcome]) {
+
+        def failures: Seq[Outcome] = outcomes.filterNot(_.succeeded)
+
+        def succeeded: Boolean = outcomes.forall(_.succeeded)
+
+        def totalNanos: Long = outcomes.map(_.nanos).sum
+    }
+
+    final case class Check(val entry: Entry, val nanos: Long, val problems: Seq[String], val failure: Option[Throwable]) {
+
+        def passed: Boolean = problems.isEmpty
+    }
+
+    final case class Validation(val checks: Seq[Check]) {
+
+        def failures: Seq[Check] = checks.filterNot(_.passed)
+
+        def passed: Boolean = checks.forall(_.passed)
+
+        def slowest(n: Int): Seq[Check] = checks.sortBy(-_.nanos).take(n)
+
+        /**
+          * Renders one line per template, with its preparation time in
+          * milliseconds and its problems, failures first.
+          */
+
+        def describe: String = {
+            val buffer = new StringBuilder
+            (failures ++ checks.filter(_.passed)).foreach { c =>
+                buffer.append(if (c.passed) "ok   " else "FAIL ")
+                buffer.append((c.nanos / 1000L) / 1000.0).append(" ms  ")
+                buffer.append(c.entry.name)
+                c.problems.foreach(p => buffer.append("\n        ").append(p))
+                buffer.append('\n')
+            }
+            buffer.toString
+        }
+    }
+}
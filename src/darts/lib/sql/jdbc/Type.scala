@@ -1,8 +1,39 @@
 package darts.lib.sql.jdbc
 
-import java.sql.{PreparedStatement, ResultSet, Timestamp, Types}
+import java.nio.channels.Channels
+import java.sql.{Connection, JDBCType, PreparedStatement, ResultSet, Timestamp, Types}
 
-sealed abstract class Type[T] {
+/**
+  * Describes, how values are bound to statement parameters. This is
+  * the part of a `Type`, which slots and constants need; descriptors,
+  * which can only be bound, but not read (like `Type.InList`), extend
+  * this class directly, and so cannot be used for result columns.
+  */
+
+sealed abstract class ParameterType[T] {
+
+    def bindValue(stmt: PreparedStatement, index: Int, value: Option[T]): Unit
+
+    /**
+      * Binds a value, which is known to be present, without going
+      * through an intermediate `Option`.
+      */
+
+    def bindRequired(stmt: PreparedStatement, index: Int, value: T): Unit =
+        bindValue(stmt, index, Some(value))
+
+    /**
+      * Number of consecutive statement parameters occupied by the
+      * given value. This is 1 for all types except the expanding ones,
+      * whose parameter marker is replaced by a list of markers.
+      */
+
+    def parameterCount(value: Option[T]): Int = 1
+
+    def isExpanding: Boolean = false
+}
+
+sealed abstract class Type[T] extends ParameterType[T] {
     outer =>
 
     type Rep = T
@@ -11,17 +42,45 @@ sealed abstract class Type[T] {
 
     def readValue(rs: ResultSet, index: Int): Option[T]
 
-    def bindValue(stmt: PreparedStatement, index: Int, value: Option[T]): Unit
+    /**
+      * Reads a value, which must not be `NULL`, without going through
+      * an intermediate `Option`.
+      */
+
+    def readRequired(rs: ResultSet, index: Int): T =
+        readValue(rs, index) match {
+            case Some(value) => value
+            case None => throw Type.nullValue(index)
+        }
+
+    /**
+      * Decodes a raw column value, as returned by `ResultSet.getObject`
+      * (with `null` standing for SQL `NULL`). This is used by `LazyRow`,
+      * which captures the raw values of each row as it is read, and
+      * decodes them only on access.
+      */
+
+    def fromObject(raw: AnyRef): Option[T]
 }
 
 abstract class Primitive[T] protected[jdbc]() extends Type[T] {
 
     protected def typeCode: Int
 
+    def sqlTypeName: String = JDBCType.valueOf(typeCode).getName
+
     protected def doBindValue(stmt: PreparedStatement, index: Int, value: T): Unit
 
     def bindValue(stmt: PreparedStatement, index: Int, value: Option[T]): Unit =
         if (value.isEmpty) stmt.setNull(index, typeCode) else doBindValue(stmt, index, value.get)
+
+    override def bindRequired(stmt: PreparedStatement, index: Int, value: T): Unit =
+        doBindValue(stmt, index, value)
+
+    protected def convert(raw: AnyRef): T
+
+    def fromObject(raw: AnyRef): Option[T] =
+        if (raw eq null) None else Some(convert(raw))
 }
 
 abstract class TypeDecorator[S, T](val storedType: Type[S]) extends Type[T] {
@@ -32,22 +91,51 @@ abstract class TypeDecorator[S, T](val storedType: Type[S]) extends Type[T] {
 
     protected def toStorage(value: Rep): Stored
 
+    private[jdbc] final def store(value: Rep): Stored = toStorage(value)
+
+    private[jdbc] final def load(value: Stored): Rep = fromStorage(value)
+
     def readValue(rs: ResultSet, name: String): Option[Rep] =
         storedType.readValue(rs, name).map(fromStorage)
 
     def readValue(rs: ResultSet, index: Int): Option[Rep] =
         storedType.readValue(rs, index).map(fromStorage)
 
+    override def readRequired(rs: ResultSet, index: Int): Rep =
+        fromStorage(storedType.readRequired(rs, index))
+
     def bindValue(stmt: PreparedStatement, index: Int, value: Option[Rep]): Unit =
         storedType.bindValue(stmt, index, value.map(toStorage))
+
+    override def bindRequired(stmt: PreparedStatement, index: Int, value: Rep): Unit =
+        storedType.bindRequired(stmt, index, toStorage(value))
+
+    def fromObject(raw: AnyRef): Option[Rep] =
+        storedType.fromObject(raw).map(fromStorage)
 }
 
 final object Type {
 
+    private[jdbc] def nullValue(index: Int): NoSuchElementException =
+        new NoSuchElementException("unexpected NULL value in column " + index)
+
+    private def unexpected(raw: AnyRef, target: String): ClassCastException =
+        new ClassCastException("cannot convert " + raw.getClass.getName + " to " + target)
+
+    private def number(raw: AnyRef): java.lang.Number = raw match {
+        case n: java.lang.Number => n
+        case b: java.lang.Boolean => java.lang.Integer.valueOf(if (b.booleanValue) 1 else 0)
+        case s: String => new java.math.BigDecimal(s.trim)
+        case other => throw unexpected(other, "number")
+    }
+
     implicit final case object Byte extends Primitive[Byte] {
 
         protected val typeCode = Types.TINYINT
 
+        protected def convert(raw: AnyRef): Byte =
+            number(raw).byteValue
+
         protected def doBindValue(stmt: PreparedStatement, index: Int, value: Byte): Unit =
             stmt.setByte(index, value)
 
@@ -60,12 +148,20 @@ final object Type {
             val raw = rs.getByte(name)
             if (rs.wasNull) None else Some(raw)
         }
+
+        override def readRequired(rs: ResultSet, index: Int): Byte = {
+            val raw = rs.getByte(index)
+            if (rs.wasNull) throw nullValue(index) else raw
+        }
     }
 
     implicit final case object Short extends Primitive[Short] {
 
         protected val typeCode = Types.SMALLINT
 
+        protected def convert(raw: AnyRef): Short =
+            number(raw).shortValue
+
         protected def doBindValue(stmt: PreparedStatement, index: Int, value: Short): Unit =
             stmt.setShort(index, value)
 
@@ -78,12 +174,20 @@ final object Type {
             val raw = rs.getShort(name)
             if (rs.wasNull) None else Some(raw)
         }
+
+        override def readRequired(rs: ResultSet, index: Int): Short = {
+            val raw = rs.getShort(index)
+            if (rs.wasNull) throw nullValue(index) else raw
+        }
     }
 
     implicit final case object Int extends Primitive[Int] {
 
         protected val typeCode = Types.INTEGER
 
+        protected def convert(raw: AnyRef): Int =
+            number(raw).intValue
+
         protected def doBindValue(stmt: PreparedStatement, index: Int, value: Int): Unit =
             stmt.setInt(index, value)
 
@@ -96,12 +200,20 @@ final object Type {
             val raw = rs.getInt(name)
             if (rs.wasNull) None else Some(raw)
         }
+
+        override def readRequired(rs: ResultSet, index: Int): Int = {
+            val raw = rs.getInt(index)
+            if (rs.wasNull) throw nullValue(index) else raw
+        }
     }
 
     implicit final case object Long extends Primitive[Long] {
 
         protected val typeCode = Types.BIGINT
 
+        protected def convert(raw: AnyRef): Long =
+            number(raw).longValue
+
         protected def doBindValue(stmt: PreparedStatement, index: Int, value: Long): Unit =
             stmt.setLong(index, value)
 
@@ -114,12 +226,20 @@ final object Type {
             val raw = rs.getLong(name)
             if (rs.wasNull) None else Some(raw)
         }
+
+        override def readRequired(rs: ResultSet, index: Int): Long = {
+            val raw = rs.getLong(index)
+            if (rs.wasNull) throw nullValue(index) else raw
+        }
     }
 
     implicit final case object Float extends Primitive[Float] {
 
         protected val typeCode = Types.FLOAT
 
+        protected def convert(raw: AnyRef): Float =
+            number(raw).floatValue
+
         protected def doBindValue(stmt: PreparedStatement, index: Int, value: Float): Unit =
             stmt.setFloat(index, value)
 
@@ -132,12 +252,20 @@ final object Type {
             val raw = rs.getFloat(name)
             if (rs.wasNull) None else Some(raw)
         }
+
+        override def readRequired(rs: ResultSet, index: Int): Float = {
+            val raw = rs.getFloat(index)
+            if (rs.wasNull) throw nullValue(index) else raw
+        }
     }
 
     implicit final case object Double extends Primitive[Double] {
 
         protected val typeCode = Types.DOUBLE
 
+        protected def convert(raw: AnyRef): Double =
+            number(raw).doubleValue
+
         protected def doBindValue(stmt: PreparedStatement, index: Int, value: Double): Unit =
             stmt.setDouble(index, value)
 
@@ -150,12 +278,24 @@ final object Type {
             val raw = rs.getDouble(name)
             if (rs.wasNull) None else Some(raw)
         }
+
+        override def readRequired(rs: ResultSet, index: Int): Double = {
+            val raw = rs.getDouble(index)
+            if (rs.wasNull) throw nullValue(index) else raw
+        }
     }
 
     implicit final case object Boolean extends Primitive[Boolean] {
 
         protected val typeCode = Types.BOOLEAN
 
+        protected def convert(raw: AnyRef): Boolean =
+            raw match {
+                case b: java.lang.Boolean => b.booleanValue
+                case s: String => s.trim.equalsIgnoreCase("true") || s.trim == "1"
+                case other => number(other).intValue != 0
+            }
+
         protected def doBindValue(stmt: PreparedStatement, index: Int, value: Boolean): Unit =
             stmt.setBoolean(index, value)
 
@@ -168,12 +308,24 @@ final object Type {
             val raw = rs.getBoolean(name)
             if (rs.wasNull) None else Some(raw)
         }
+
+        override def readRequired(rs: ResultSet, index: Int): Boolean = {
+            val raw = rs.getBoolean(index)
+            if (rs.wasNull) throw nullValue(index) else raw
+        }
     }
 
     implicit final case object BigDecimal extends Primitive[BigDecimal] {
 
         protected val typeCode = Types.DECIMAL
 
+        protected def convert(raw: AnyRef): BigDecimal =
+            raw match {
+                case b: java.math.BigDecimal => scala.math.BigDecimal(b)
+                case b: java.math.BigInteger => scala.math.BigDecimal(new java.math.BigDecimal(b))
+                case other => scala.math.BigDecimal(new java.math.BigDecimal(number(other).toString))
+            }
+
         protected def doBindValue(stmt: PreparedStatement, index: Int, value: BigDecimal): Unit =
             stmt.setBigDecimal(index, value.underlying())
 
@@ -186,12 +338,24 @@ final object Type {
             val raw = rs.getBigDecimal(name)
             if (rs.wasNull) None else Some(raw)
         }
+
+        override def readRequired(rs: ResultSet, index: Int): BigDecimal = {
+            val raw = rs.getBigDecimal(index)
+            if (rs.wasNull) throw nullValue(index) else raw
+        }
     }
 
     implicit final case object String extends Primitive[String] {
 
         protected val typeCode = Types.VARCHAR
 
+        protected def convert(raw: AnyRef): String =
+            raw match {
+                case s: String => s
+                case c: java.sql.Clob => c.getSubString(1L, c.length.toInt)
+                case other => other.toString
+            }
+
         protected def doBindValue(stmt: PreparedStatement, index: Int, value: String): Unit =
             stmt.setString(index, value)
 
@@ -204,12 +368,27 @@ final object Type {
             val raw = rs.getString(name)
             if (rs.wasNull) None else Some(raw)
         }
+
+        override def readRequired(rs: ResultSet, index: Int): String = {
+            val raw = rs.getString(index)
+            if (rs.wasNull) throw nullValue(index) else raw
+        }
     }
 
     implicit final case object Timestamp extends Primitive[Timestamp] {
 
         protected val typeCode = Types.TIMESTAMP
 
+        protected def convert(raw: AnyRef): Timestamp =
+            raw match {
+                case t: Timestamp => t
+                case d: java.util.Date => new Timestamp(d.getTime)
+                case l: java.time.LocalDateTime => java.sql.Timestamp.valueOf(l)
+                case l: java.time.LocalDate => java.sql.Timestamp.valueOf(l.atStartOfDay)
+                case o: java.time.OffsetDateTime => java.sql.Timestamp.from(o.toInstant)
+                case other => throw unexpected(other, "Timestamp")
+            }
+
         protected def doBindValue(stmt: PreparedStatement, index: Int, value: Timestamp): Unit =
             stmt.setTimestamp(index, value)
 
@@ -222,12 +401,27 @@ final object Type {
             val raw = rs.getTimestamp(name)
             if (rs.wasNull) None else Some(raw)
         }
+
+        override def readRequired(rs: ResultSet, index: Int): Timestamp = {
+            val raw = rs.getTimestamp(index)
+            if (rs.wasNull) throw nullValue(index) else raw
+        }
     }
 
     implicit final case object Date extends Primitive[java.sql.Date] {
 
         protected val typeCode = Types.DATE
 
+        protected def convert(raw: AnyRef): java.sql.Date =
+            raw match {
+                case d: java.sql.Date => d
+                case t: Timestamp => java.sql.Date.valueOf(t.toLocalDateTime.toLocalDate)
+                case d: java.util.Date => new java.sql.Date(d.getTime)
+                case l: java.time.LocalDate => java.sql.Date.valueOf(l)
+                case l: java.time.LocalDateTime => java.sql.Date.valueOf(l.toLocalDate)
+                case other => throw unexpected(other, "Date")
+            }
+
         protected def doBindValue(stmt: PreparedStatement, index: Int, value: java.sql.Date): Unit =
             stmt.setDate(index, value)
 
@@ -240,12 +434,26 @@ final object Type {
             val raw = rs.getDate(name)
             if (rs.wasNull) None else Some(raw)
         }
+
+        override def readRequired(rs: ResultSet, index: Int): java.sql.Date = {
+            val raw = rs.getDate(index)
+            if (rs.wasNull) throw nullValue(index) else raw
+        }
     }
 
     implicit final case object Time extends Primitive[java.sql.Time] {
 
         protected val typeCode = Types.TIME
 
+        protected def convert(raw: AnyRef): java.sql.Time =
+            raw match {
+                case t: java.sql.Time => t
+                case t: Timestamp => java.sql.Time.valueOf(t.toLocalDateTime.toLocalTime)
+                case l: java.time.LocalTime => java.sql.Time.valueOf(l)
+                case l: java.time.LocalDateTime => java.sql.Time.valueOf(l.toLocalTime)
+                case other => throw unexpected(other, "Time")
+            }
+
         protected def doBindValue(stmt: PreparedStatement, index: Int, value: java.sql.Time): Unit =
             stmt.setTime(index, value)
 
@@ -258,6 +466,60 @@ final object Type {
             val raw = rs.getTime(name)
             if (rs.wasNull) None else Some(raw)
         }
+
+        override def readRequired(rs: ResultSet, index: Int): java.sql.Time = {
+            val raw = rs.getTime(index)
+            if (rs.wasNull) throw nullValue(index) else raw
+        }
+    }
+
+    implicit final case object Bytes extends Primitive[scala.Array[scala.Byte]] {
+
+        protected val typeCode = Types.VARBINARY
+
+        protected def convert(raw: AnyRef): scala.Array[scala.Byte] =
+            raw match {
+                case b: scala.Array[scala.Byte] => b
+                case b: java.sql.Blob => b.getBytes(1L, b.length.toInt)
+                case other => throw unexpected(other, "byte array")
+            }
+
+        protected def doBindValue(stmt: PreparedStatement, index: Int, value: scala.Array[scala.Byte]): Unit =
+            stmt.setBytes(index, value)
+
+        def readValue(rs: ResultSet, name: String): Option[scala.Array[scala.Byte]] =
+            Option(rs.getBytes(name))
+
+        def readValue(rs: ResultSet, name: Int): Option[scala.Array[scala.Byte]] =
+            Option(rs.getBytes(name))
+    }
+
+    /**
+      * Binary values streamed from and to the database without being
+      * materialized on the heap. Values are bound with the length-aware
+      * `setBinaryStream`; values read are only valid while the row is
+      * current (see also `Binary.transferTo`).
+      */
+
+    implicit final case object BinaryStream extends Primitive[BinaryStream] {
+
+        protected val typeCode = Types.LONGVARBINARY
+
+        protected def convert(raw: AnyRef): BinaryStream =
+            raw match {
+                case b: scala.Array[scala.Byte] => new BinaryStream(Channels.newChannel(new java.io.ByteArrayInputStream(b)), b.length.toLong)
+                case b: java.sql.Blob => new BinaryStream(Channels.newChannel(b.getBinaryStream), b.length)
+                case other => throw unexpected(other, "BinaryStream")
+            }
+
+        protected def doBindValue(stmt: PreparedStatement, index: Int, value: BinaryStream): Unit =
+            stmt.setBinaryStream(index, value.inputStream, value.length)
+
+        def readValue(rs: ResultSet, name: String): Option[BinaryStream] =
+            Option(rs.getBinaryStream(name)).map(in => new BinaryStream(Channels.newChannel(in), -1L))
+
+        def readValue(rs: ResultSet, name: Int): Option[BinaryStream] =
+            Option(rs.getBinaryStream(name)).map(in => new BinaryStream(Channels.newChannel(in), -1L))
     }
 
     implicit final case object Char extends TypeDecorator[String, Char](String) {
@@ -269,40 +531,342 @@ final object Type {
             "" + value
     }
 
-    implicit final case object Instant extends TypeDecorator[Timestamp, java.time.Instant](Timestamp) {
+    /**
+      * The `java.time` types are read and bound directly via the JDBC 4.2
+      * `getObject(index, class)`/`setObject` methods, avoiding the legacy
+      * `java.sql` temporal objects and their default time zone conversion,
+      * provided that the driver claims JDBC 4.2 compliance (see
+      * `JavaTimeSupport`). For all other drivers, the legacy accessors are
+      * used. Instants are exchanged as `OffsetDateTime` in UTC on the
+      * direct path; the legacy path converts them via the default time
+      * zone (`Timestamp.from`), exactly as before the direct path
+      * existed, so that values already stored keep their meaning. Local
+      * dates and times are passed to the legacy accessors with a UTC
+      * calendar, which keeps their fields intact (even within a daylight
+      * saving gap of the default time zone).
+      */
+
+    implicit final case object Instant extends Primitive[java.time.Instant] {
+
+        protected val typeCode = Types.TIMESTAMP
+
+        protected def convert(raw: AnyRef): java.time.Instant =
+            raw match {
+                case i: java.time.Instant => i
+                case o: java.time.OffsetDateTime => o.toInstant
+                case z: java.time.ZonedDateTime => z.toInstant
+                case l: java.time.LocalDateTime => l.atZone(java.time.ZoneId.systemDefault).toInstant
+                case t: Timestamp => t.toInstant
+                case other => throw unexpected(other, "Instant")
+            }
+
+        protected def doBindValue(stmt: PreparedStatement, index: Int, value: java.time.Instant): Unit =
+            JavaTimeSupport.bind(stmt)(stmt.setObject(index, java.time.OffsetDateTime.ofInstant(value, java.time.ZoneOffset.UTC)))(
+                stmt.setTimestamp(index, java.sql.Timestamp.from(value)))
+
+        def readValue(rs: ResultSet, name: String): Option[java.time.Instant] =
+            JavaTimeSupport.read(rs)(rs.getObject(name, classOf[java.time.OffsetDateTime]))(
+                Option(rs.getTimestamp(name)).map(JavaTimeSupport.offsetDateTime)).map(_.toInstant)
+
+        def readValue(rs: ResultSet, name: Int): Option[java.time.Instant] =
+            JavaTimeSupport.read(rs)(rs.getObject(name, classOf[java.time.OffsetDateTime]))(
+                Option(rs.getTimestamp(name)).map(JavaTimeSupport.offsetDateTime)).map(_.toInstant)
+    }
+
+    implicit final case object LocalDate extends Primitive[java.time.LocalDate] {
+
+        protected val typeCode = Types.DATE
+
+        protected def convert(raw: AnyRef): java.time.LocalDate =
+            raw match {
+                case l: java.time.LocalDate => l
+                case d: java.sql.Date => d.toLocalDate
+                case t: Timestamp => t.toLocalDateTime.toLocalDate
+                case l: java.time.LocalDateTime => l.toLocalDate
+                case other => throw unexpected(other, "LocalDate")
+            }
+
+        protected def doBindValue(stmt: PreparedStatement, index: Int, value: java.time.LocalDate): Unit =
+            JavaTimeSupport.bind(stmt)(stmt.setObject(index, value))(stmt.setDate(index, JavaTimeSupport.date(value), JavaTimeSupport.utc))
+
+        def readValue(rs: ResultSet, name: String): Option[java.time.LocalDate] =
+            JavaTimeSupport.read(rs)(rs.getObject(name, classOf[java.time.LocalDate]))(
+                Option(rs.getDate(name, JavaTimeSupport.utc)).map(JavaTimeSupport.localDate))
+
+        def readValue(rs: ResultSet, name: Int): Option[java.time.LocalDate] =
+            JavaTimeSupport.read(rs)(rs.getObject(name, classOf[java.time.LocalDate]))(
+                Option(rs.getDate(name, JavaTimeSupport.utc)).map(JavaTimeSupport.localDate))
+    }
+
+    implicit final case object LocalTime extends Primitive[java.time.LocalTime] {
+
+        protected val typeCode = Types.TIME
+
+        protected def convert(raw: AnyRef): java.time.LocalTime =
+            raw match {
+                case l: java.time.LocalTime => l
+                case t: java.sql.Time => t.toLocalTime
+                case t: Timestamp => t.toLocalDateTime.toLocalTime
+                case l: java.time.LocalDateTime => l.toLocalTime
+                case other => throw unexpected(other, "LocalTime")
+            }
+
+        protected def doBindValue(stmt: PreparedStatement, index: Int, value: java.time.LocalTime): Unit =
+            JavaTimeSupport.bind(stmt)(stmt.setObject(index, value))(stmt.setTime(index, JavaTimeSupport.time(value), JavaTimeSupport.utc))
+
+        def readValue(rs: ResultSet, name: String): Option[java.time.LocalTime] =
+            JavaTimeSupport.read(rs)(rs.getObject(name, classOf[java.time.LocalTime]))(
+                Option(rs.getTime(name, JavaTimeSupport.utc)).map(JavaTimeSupport.localTime))
+
+        def readValue(rs: ResultSet, name: Int): Option[java.time.LocalTime] =
+            JavaTimeSupport.read(rs)(rs.getObject(name, classOf[java.time.LocalTime]))(
+                Option(rs.getTime(name, JavaTimeSupport.utc)).map(JavaTimeSupport.localTime))
+    }
+
+    implicit final case object LocalDateTime extends Primitive[java.time.LocalDateTime] {
+
+        protected val typeCode = Types.TIMESTAMP
+
+        protected def convert(raw: AnyRef): java.time.LocalDateTime =
+            raw match {
+                case l: java.time.LocalDateTime => l
+                case t: Timestamp => t.toLocalDateTime
+                case d: java.sql.Date => d.toLocalDate.atStartOfDay
+                case o: java.time.OffsetDateTime => o.atZoneSameInstant(java.time.ZoneOffset.UTC).toLocalDateTime
+                case other => throw unexpected(other, "LocalDateTime")
+            }
+
+        protected def doBindValue(stmt: PreparedStatement, index: Int, value: java.time.LocalDateTime): Unit =
+            JavaTimeSupport.bind(stmt)(stmt.setObject(index, value))(stmt.setTimestamp(index, JavaTimeSupport.timestamp(value), JavaTimeSupport.utc))
+
+        def readValue(rs: ResultSet, name: String): Option[java.time.LocalDateTime] =
+            JavaTimeSupport.read(rs)(rs.getObject(name, classOf[java.time.LocalDateTime]))(
+                Option(rs.getTimestamp(name, JavaTimeSupport.utc)).map(JavaTimeSupport.localDateTime))
+
+        def readValue(rs: ResultSet, name: Int): Option[java.time.LocalDateTime] =
+            JavaTimeSupport.read(rs)(rs.getObject(name, classOf[java.time.LocalDateTime]))(
+                Option(rs.getTimestamp(name, JavaTimeSupport.utc)).map(JavaTimeSupport.localDateTime))
+    }
 
-        protected def fromStorage(value: Stored): Rep =
-            value.toInstant()
+    /**
+      * Collection type, which expands its parameter marker into an
+      * `IN` list, i.e., `x IN (?)` becomes `x IN (?, ?, ?, ?)`. To keep
+      * the number of distinct statement texts small, the list length
+      * is rounded up to the next power of two, capped at `MaxBucket`
+      * (Oracle's limit on the number of list elements), and the surplus
+      * markers are bound to the last element again. Lists longer than
+      * `MaxBucket` are rejected with `IllegalArgumentException`; use
+      * `sqlArray` (or a temporary table) for those. An empty collection
+      * (or `None`) has no meaningful expansion (binding it as `NULL`
+      * would make `NOT IN` match nothing), and is rejected as well.
+      * This type can only be bound, not read.
+      */
+
+    final case class InList[E](val element: Type[E]) extends ParameterType[Seq[E]] {
+
+        override def isExpanding: Boolean = true
+
+        override def parameterCount(value: Option[Seq[E]]): Int =
+            InList.bucket(InList.nonEmpty(value).size)
+
+        def bindValue(stmt: PreparedStatement, index: Int, value: Option[Seq[E]]): Unit = {
+            val values = InList.nonEmpty(value)
+            val count = InList.bucket(values.size)
+            var position = index
+            values.foreach { v =>
+                element.bindValue(stmt, position, Some(v))
+                position += 1
+            }
+            val last = Some(values.last)
+            while (position < index + count) {
+                element.bindValue(stmt, position, last)
+                position += 1
+            }
+        }
 
-        protected def toStorage(value: Rep): Stored =
-            java.sql.Timestamp.from(value)
+        override def toString: String = "InList(" + element + ")"
     }
 
-    implicit final case object LocalDate extends TypeDecorator[java.sql.Date, java.time.LocalDate](Date) {
+    object InList {
 
-        protected def fromStorage(value: Stored): Rep =
-            value.toLocalDate()
+        final val MaxBucket = 1000
 
-        protected def toStorage(value: Rep): Stored =
-            java.sql.Date.valueOf(value)
+        def bucket(size: Int): Int =
+            if (size <= 1) 1
+            else if (size > MaxBucket) throw new IllegalArgumentException("IN list must not have more than " + MaxBucket + " elements: " + size)
+            else math.min(Integer.highestOneBit(size - 1) << 1, MaxBucket)
+
+        private[jdbc] def nonEmpty[E](value: Option[Seq[E]]): Seq[E] =
+            if (value.isEmpty || value.get.isEmpty) throw new IllegalArgumentException("IN list must not be empty")
+            else value.get
+    }
+
+    /**
+      * Collection type, which is bound as a single SQL array parameter
+      * created via `Connection.createArrayOf`, for use with drivers,
+      * which support arrays, as in `x = ANY(?)`. The statement text
+      * does not depend on the number of elements at all.
+      */
+
+    final case class SqlArray[E](val element: Primitive[E], val typeName: String) extends Type[Seq[E]] {
+
+        def bindValue(stmt: PreparedStatement, index: Int, value: Option[Seq[E]]): Unit =
+            if (value.isEmpty) stmt.setNull(index, Types.ARRAY)
+            else {
+                val elements = value.get.map({
+                    case v: scala.math.BigDecimal => v.underlying()
+                    case v => v.asInstanceOf[AnyRef]
+                }).toArray[AnyRef]
+                stmt.setArray(index, stmt.getConnection.createArrayOf(typeName, elements))
+            }
+
+        def readValue(rs: ResultSet, name: String): Option[Seq[E]] =
+            convert(rs.getArray(name))
+
+        def readValue(rs: ResultSet, index: Int): Option[Seq[E]] =
+            convert(rs.getArray(index))
+
+        def fromObject(raw: AnyRef): Option[Seq[E]] =
+            raw match {
+                case null => None
+                case a: java.sql.Array => convert(a)
+                case other => throw unexpected(other, "SQL array")
+            }
+
+        private def convert(array: java.sql.Array): Option[Seq[E]] =
+            if (array eq null) None
+            else try {
+                Some(array.getArray().asInstanceOf[scala.Array[AnyRef]].toVector.map({
+                    case v: java.math.BigDecimal => scala.math.BigDecimal(v).asInstanceOf[E]
+                    case v => v.asInstanceOf[E]
+                }))
+            } finally
+                array.free()
+
+        override def toString: String = "SqlArray(" + element + "," + typeName + ")"
     }
 
-    implicit final case object LocalTime extends TypeDecorator[java.sql.Time, java.time.LocalTime](Time) {
+    def inList[E](implicit element: Type[E]): ParameterType[Seq[E]] = InList(element)
+
+    def deduplicated(capacity: Int = 1024, maxLength: Int = 64): Primitive[String] =
+        new DeduplicatedString(new StringDictionary(capacity, maxLength))
 
-        protected def fromStorage(value: Stored): Rep =
-            value.toLocalTime()
+    def sqlArray[E](implicit element: Primitive[E]): Type[Seq[E]] = SqlArray(element, element.sqlTypeName)
 
-        protected def toStorage(value: Rep): Stored =
-            java.sql.Time.valueOf(value)
+    def sqlArrayOf[E](typeName: String)(implicit element: Primitive[E]): Type[Seq[E]] = SqlArray(element, typeName)
+}
+
+/**
+  * Decides, whether the `java.time` types are exchanged with the driver
+  * directly via the JDBC 4.2 object accessors, or via the legacy
+  * `java.sql` temporal types. Not every driver, which accepts
+  * `setObject(index, LocalDate.now)`, actually understands it (some
+  * serialise the object, and fail only when the statement is executed,
+  * or even store garbage), so the direct path is used only for drivers,
+  * which claim JDBC 4.2 compliance in their `DatabaseMetaData`. The
+  * verdict is remembered per connection.
+  *
+  * As a safety net, a connection is switched to the legacy path, if
+  * the driver reports the direct accessor as not supported (or does not
+  * implement it at all), or if `getObject(index, class)` answers `null`
+  * for a column, which is not `NULL`. All other errors are propagated.
+  *
+  * The legacy conversions exchange local dates and times using a UTC
+  * calendar (see `utc`), which keeps their fields intact regardless of
+  * the default time zone, just like on the direct path.
+  */
+
+private[jdbc] object JavaTimeSupport {
+
+    private final class Verdict(val connection: Connection, val direct: Boolean)
+
+    private val verdicts = new java.util.WeakHashMap[Connection, java.lang.Boolean]
+    @volatile private var last: Verdict = new Verdict(null, false)
+
+    private def isDirect(connection: Connection): Boolean = {
+        val known = last
+        if (known.connection eq connection) known.direct
+        else {
+            val direct = verdicts.synchronized {
+                val cached = verdicts.get(connection)
+                if (cached ne null) cached.booleanValue
+                else {
+                    val claimed = claimsJdbc42(connection)
+                    verdicts.put(connection, claimed)
+                    claimed
+                }
+            }
+            last = new Verdict(connection, direct)
+            direct
+        }
     }
 
-    implicit final case object LocalDateTime extends TypeDecorator[java.sql.Timestamp, java.time.LocalDateTime](Timestamp) {
+    private def claimsJdbc42(connection: Connection): Boolean =
+        try {
+            val meta = connection.getMetaData
+            val major = meta.getJDBCMajorVersion
+            major > 4 || (major == 4 && meta.getJDBCMinorVersion >= 2)
+        } catch {
+            case _: java.sql.SQLException | _: AbstractMethodError => false
+        }
+
+    private def unsupported(connection: Connection): Unit = {
+        verdicts.synchronized(verdicts.put(connection, java.lang.Boolean.FALSE))
+        last = new Verdict(connection, false)
+    }
 
-        protected def fromStorage(value: Stored): Rep =
-            value.toLocalDateTime()
+    def bind(stmt: PreparedStatement)(direct: => Unit)(legacy: => Unit): Unit = {
+        val connection = stmt.getConnection
+        if (!isDirect(connection)) legacy
+        else try direct catch {
+            case _: java.sql.SQLFeatureNotSupportedException | _: AbstractMethodError =>
+                unsupported(connection)
+                legacy
+        }
+    }
 
-        protected def toStorage(value: Rep): Stored =
-            java.sql.Timestamp.valueOf(value)
+    def read[T <: AnyRef](rs: ResultSet)(direct: => T)(legacy: => Option[T]): Option[T] = {
+        val statement = rs.getStatement
+        val connection = if (statement eq null) null else statement.getConnection
+        if ((connection eq null) || !isDirect(connection)) legacy
+        else {
+            val value = try direct catch {
+                case _: java.sql.SQLFeatureNotSupportedException | _: AbstractMethodError =>
+                    unsupported(connection)
+                    return legacy
+            }
+            if (value ne null) Some(value)
+            else if (rs.wasNull) None
+            else {
+                unsupported(connection)
+                legacy
+            }
+        }
     }
 
-}
\ No newline at end of file
+    import java.time.ZoneOffset.UTC
+
+    def utc: java.util.Calendar =
+        java.util.Calendar.getInstance(java.util.TimeZone.getTimeZone(UTC))
+
+    def offsetDateTime(value: java.sql.Timestamp): java.time.OffsetDateTime =
+        java.time.OffsetDateTime.ofInstant(value.toInstant, UTC)
+
+    def timestamp(value: java.time.LocalDateTime): java.sql.Timestamp =
+        java.sql.Timestamp.from(value.toInstant(UTC))
+
+    def localDateTime(value: java.sql.Timestamp): java.time.LocalDateTime =
+        java.time.LocalDateTime.ofInstant(value.toInstant, UTC)
+
+    def date(value: java.time.LocalDate): java.sql.Date =
+        new java.sql.Date(value.atStartOfDay(UTC).toInstant.toEpochMilli)
+
+    def localDate(value: java.util.Date): java.time.LocalDate =
+        java.time.Instant.ofEpochMilli(value.getTime).atOffset(UTC).toLocalDate
+
+    def time(value: java.time.LocalTime): java.sql.Time =
+        new java.sql.Time(value.toNanoOfDay / 1000000L)
+
+    def localTime(value: java.util.Date): java.time.LocalTime =
+        java.time.LocalTime.ofNanoOfDay(java.lang.Math.floorMod(value.getTime, 86400000L) * 1000000L)
+}
@@ -0,0 +1,383 @@
+package darts.lib.sql.jdbc
+
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream, DataInputStream, DataOutputStream}
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.{Path, StandardOpenOption}
+import java.util.concurrent.TimeUnit
+import java.util.zip.CRC32
+
+import scala.collection.mutable.ArrayBuffer
+import scala.util.control.NonFatal
+
+/**
+  * Write-behind sink for a command template. Submitted bindings are
+  * appended to a memory-mapped journal file and acknowledged right
+  * away; a background thread replays the journal into the database,
+  * up to `batchSize` records per transaction and JDBC batch, and
+  * records its progress in the journal's header. A sink opened on an
+  * existing journal first replays the records left over from before.
+  *
+  * Records written to the mapping survive a crash of the process (the
+  * operating system writes them back eventually); with `sync` enabled,
+  * every submission is also forced to disk, which is needed to survive
+  * a crash of the machine, at a considerable cost. Each record carries
+  * a CRC, so a record torn by a crash ends the journal. Delivery is at
+  * least once: records committed to the database shortly before a crash
+  * may be replayed again after restart.
+  *
+  * The journal has a fixed `capacity` (in bytes); it is rewound every
+  * time the flusher has caught up. Submissions block while the journal
+  * is full.
+  *
+  * Failures, which `retryPolicy` deems retryable (deadlocks,
+  * serialization failures), are retried up to the policy's maximum
+  * number of attempts; if they persist, or if the session becomes
+  * unusable, the records stay in the journal, and the flusher tries
+  * again after `flushInterval` milliseconds. Only records, which fail
+  * with a non-retryable error while the session remains usable (e.g.,
+  * constraint violations), are passed to `rejected` and dropped.
+  *
+  * Should the flusher thread die (by interruption, or an unexpected
+  * error), the records not yet written stay in the journal, and all
+  * further calls to `submit` and `flush` fail with an
+  * `IllegalStateException` carrying the cause.
+  */
+
+final class WriteBehindSink(val template: Template,
+                            val factory: SessionFactory,
+                            val path: Path,
+                            val capacity: Int = 64 << 20,
+                            val batchSize: Int = 1000,
+                            val flushInterval: Long = 100L,
+                            val sync: Boolean = false,
+                            val rejected: (Bindings, Throwable) => Unit = (_, _) => (),
+                            val retryPolicy: RetryPolicy = RetryPolicy.Default) {
+
+    import WriteBehindSink._
+
+    require(!template.isExpanding, "expanding templates cannot be journalled")
+    require(capacity > HeaderSize + 16, "capacity too small")
+
+    private val slots: IndexedSeq[Slot[Any]] =
+        template.substitutions.collect({ case s: Slot[_] => s.asInstanceOf[Slot[Any]] }).distinct.toIndexedSeq
+
+    private val codecs: IndexedSeq[JournalCodec[Any]] =
+        slots.map(s => JournalCodec.forType(s.descriptor))
+
+    private val channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+    private val buffer: MappedByteBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0L, capacity)
+    private val lock = new Object
+
+    private var readOffset: Int = HeaderSize
+    private var writeOffset: Int = HeaderSize
+    private var running: Boolean = true
+    private var failure: Throwable = null
+    private var rewinds: Long = 0L
+
+    /**
+      * Number of records found in the journal when the sink was opened.
+      */
+
+    val recovered: Int = recover()
+
+    private val flusher = {
+        val thread = new Thread(new Runnable {
+            def run(): Unit = loop()
+        }, "darts-sql-write-behind")
+        thread.setDaemon(true)
+        thread.start()
+        thread
+    }
+
+    private def recover(): Int =
+        if (buffer.getInt(0) != Magic) {
+            buffer.putInt(HeaderSize, 0)
+            buffer.putInt(ReadPosition, HeaderSize)
+            buffer.putInt(0, Magic)
+            buffer.force()
+            0
+        } else {
+            readOffset = buffer.getInt(ReadPosition)
+            var count = 0
+            var position = readOffset
+            var next = scan(position)
+            while (next > 0) {
+                count += 1
+                position = next
+                next = scan(position)
+            }
+            writeOffset = position
+            count
+        }
+
+    /**
+      * Returns the offset following the valid record at `position`, or
+      * -1, if there is none.
+      */
+
+    private def scan(position: Int): Int =
+        if (position + 8 > capacity) -1
+        else {
+            val length = buffer.getInt(position)
+            if (length <= 0 || position + 8 + length > capacity) -1
+            else if (buffer.getInt(position + 4) != checksum(position + 8, length)) -1
+            else position + 8 + length
+        }
+
+    private def checksum(position: Int, length: Int): Int = {
+        val view = buffer.duplicate()
+        view.limit(position + length)
+        view.position(position)
+        val crc = new CRC32
+        crc.update(view)
+        crc.getValue.toInt
+    }
+
+    def submit(bindings: Bindings): Unit = {
+        val bytes = new ByteArrayOutputStream(64)
+        val out = new DataOutputStream(bytes)
+        var i = 0
+        while (i < slots.size) {
+            val value = bindings(slots(i))
+            out.writeBoolean(value.isDefined)
+            if (value.isDefined) codecs(i).write(out, value.get)
+            i += 1
+        }
+        out.flush()
+        append(bytes.toByteArray)
+    }
+
+    def submit(bindings: Bindings.Binding[_]*): Unit =
+        submit(Bindings(bindings: _*))
+
+    /**
+      * Appends a record. Its length is written last, so that a record
+      * torn by a crash ends the journal.
+      */
+
+    private def append(payload: Array[Byte]): Unit = lock.synchronized {
+        val size = 8 + payload.length
+        if (HeaderSize + size + 4 > capacity) throw new IllegalArgumentException("record exceeds the journal's capacity")
+        while (running && writeOffset + size + 4 > capacity) lock.wait()
+        if (!running) throw stopped
+        val view = buffer.duplicate()
+        view.position(writeOffset + 8)
+        view.put(payload)
+        buffer.putInt(writeOffset + 4, checksum(writeOffset + 8, payload.length))
+        buffer.putInt(writeOffset + size, 0)
+        buffer.putInt(writeOffset, payload.length)
+        writeOffset += size
+        if (sync) buffer.force()
+        lock.notifyAll()
+    }
+
+    /**
+      * Waits until all records submitted so far have been written to
+      * the database (or rejected), but at most `timeout` milliseconds.
+      * Returns whether the records have been written; records, which
+      * have not, remain in the journal. Fails, if the flusher has died.
+      */
+
+    def flush(timeout: Long): Boolean = lock.synchronized {
+        val target = writeOffset
+        val rewinds = this.rewinds
+        val start = System.nanoTime
+        val budget = TimeUnit.MILLISECONDS.toNanos(timeout)
+        while (readOffset < target && rewinds == this.rewinds) {
+            if (failure ne null) throw stopped
+            val elapsed = System.nanoTime - start
+            if (elapsed >= budget) return false
+            lock.notifyAll()
+            lock.wait(math.max(1L, math.min(flushInterval, TimeUnit.NANOSECONDS.toMillis(budget - elapsed))))
+        }
+        true
+    }
+
+    /**
+      * Waits until all records submitted so far have been written to
+      * the database (or rejected), for as long as it takes. As long as
+      * the database is unavailable, this blocks; prefer the variant with
+      * a timeout, unless blocking is acceptable.
+      */
+
+    def flush(): Unit =
+        flush(Long.MaxValue)
+
+    /**
+      * Replays what is left in the journal, stops the flusher, and closes
+      * the journal file. Records, which cannot be written at this time,
+      * remain in the journal for the next sink opened on it.
+      */
+
+    def close(): Unit = {
+        lock.synchronized {
+            running = false
+            lock.notifyAll()
+        }
+        flusher.join()
+        buffer.force()
+        channel.close()
+    }
+
+    private def stopped: IllegalStateException =
+        if (failure eq null) new IllegalStateException("sink has been closed")
+        else new IllegalStateException("flusher has died", failure)
+
+    /**
+      * Replays the journal until the sink is closed. An interruption
+      * stops the flusher like an unexpected error does: the failure is
+      * recorded, so that callers waiting in `submit` or `flush` are
+      * woken up and fail, rather than waiting for a thread, which is
+      * gone. Records not yet written stay in the journal.
+      */
+
+    private def loop(): Unit =
+        try {
+            var failed = false
+            while (lock.synchronized(running || (readOffset < writeOffset && !failed))) {
+                val (from, to) = lock.synchronized {
+                    if (running && (readOffset == writeOffset || failed)) lock.wait(flushInterval)
+                    (readOffset, writeOffset)
+                }
+                failed = false
+                if (from < to) {
+                    try replay(from, to)
+                    catch {
+                        case NonFatal(_) => failed = true
+                    }
+                }
+            }
+        } catch {
+            case e: InterruptedException =>
+                die(e)
+            case e: Throwable =>
+                die(e)
+                throw e
+        }
+
+    private def die(cause: Throwable): Unit = lock.synchronized {
+        failure = cause
+        running = false
+        lock.notifyAll()
+    }
+
+    private def replay(from: Int, to: Int): Unit = {
+        var position = from
+        while (position < to) {
+            val batch = new ArrayBuffer[Bindings](math.min(batchSize, 1024))
+            val ends = new ArrayBuffer[Int](math.min(batchSize, 1024))
+            var end = position
+            while (end < to && batch.size < batchSize) {
+                val length = buffer.getInt(end)
+                batch += decode(end + 8, length)
+                end += 8 + length
+                ends += end
+            }
+            write(batch, ends)
+            position = end
+        }
+    }
+
+    private def decode(position: Int, length: Int): Bindings = {
+        val bytes = new Array[Byte](length)
+        val view = buffer.duplicate()
+        view.position(position)
+        view.get(bytes)
+        val in = new DataInputStream(new ByteArrayInputStream(bytes))
+        var bindings = Bindings.Empty
+        var i = 0
+        while (i < slots.size) {
+            val value = if (in.readBoolean()) Some(codecs(i).read(in)) else None
+            bindings = bindings + Bindings.Binding(slots(i), value)
+            i += 1
+        }
+        bindings
+    }
+
+    /**
+      * Writes the batch in a single transaction. If that fails with a
+      * non-retryable error, the records are written one by one, each in
+      * its own transaction, and the journal is advanced past each record
+      * written or rejected, so that an exception thrown midway (leaving
+      * the remaining records in the journal) does not replay them.
+      */
+
+    private def write(batch: IndexedSeq[Bindings], ends: IndexedSeq[Int]): Unit =
+        factory.withSession(Characteristics) { session =>
+            val failure = attempt(session)(template.executeBatch(session, batch.iterator, batchSize))
+            if (failure eq null) advance(ends.last)
+            else if (!permanent(session, failure)) throw failure
+            else {
+                var i = 0
+                while (i < batch.size) {
+                    val error = attempt(session)(template.executeCommand(session, batch(i)))
+                    if (error ne null) {
+                        if (!permanent(session, error)) throw error
+                        rejected(batch(i), error)
+                    }
+                    advance(ends(i))
+                    i += 1
+                }
+            }
+        }
+
+    /**
+      * Runs `fn` in a transaction, retrying retryable failures according
+      * to `retryPolicy`. Returns the last failure, or `null` on success.
+      */
+
+    private def attempt(session: Session)(fn: => Any): Throwable = {
+        var attempts = 1
+        while (true) {
+            try {
+                session.transactionally(fn)
+                return null
+            } catch {
+                case NonFatal(e) =>
+                    if (!retryPolicy.isRetryable(e) || attempts >= retryPolicy.maxAttempts) return e
+                    Thread.sleep(retryPolicy.backoff(attempts))
+                    attempts += 1
+            }
+        }
+        null
+    }
+
+    private def permanent(session: Session, failure: Throwable): Boolean =
+        !retryPolicy.isRetryable(failure) && (try session.isValid(1) catch { case NonFatal(_) => false })
+
+    /**
+      * Moves the read position past the records written. When the
+      * flusher has caught up, the journal is rewound; the first record
+      * is cleared before the header is updated, so that a crash in
+      * between cannot revive records, which have already been written.
+      */
+
+    private def advance(position: Int): Unit = lock.synchronized {
+        if (position == writeOffset) {
+            buffer.putInt(HeaderSize, 0)
+            readOffset = HeaderSize
+            writeOffset = HeaderSize
+            rewinds += 1
+        } else
+            readOffset = position
+        buffer.putInt(ReadPosition, readOffset)
+        if (sync) buffer.force()
+        lock.notifyAll()
+    }
+}
+
+object WriteBehindSink {
+
+    private val Magic = 0x44574253
+    private val ReadPosition = 8
+    private val HeaderSize = 64
+
+    private val Characteristics = SessionOpenMode.ReadWrite + SessionAutoCommit.Disabled
+
+    def apply(action: Action, factory: SessionFactory, path: Path): WriteBehindSink =
+        new WriteBehindSink(action.template, factory, path)
+
+    def apply(insert: Insert[_], factory: SessionFactory, path: Path): WriteBehindSink =
+        new WriteBehindSink(insert.template, factory, path)
+}
@@ -235,4 +235,8 @@ public class DelegatePreparedStatement<S extends PreparedStatement, C extends Co
     public void setNClob(int parameterIndex, Reader reader) throws SQLException {
         statement.setNClob(parameterIndex, reader);
     }
+
+    public long executeLargeUpdate() throws SQLException {
+        return statement.executeLargeUpdate();
+    }
 }
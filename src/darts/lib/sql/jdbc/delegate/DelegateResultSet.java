@@ -482,7 +482,7 @@ public class DelegateResultSet
     }
 
     public Statement getStatement() throws SQLException {
-        return resultSet.getStatement();
+        return statement;
     }
 
     public Object getObject(int columnIndex, Map<String, Class<?>> map) throws SQLException {
@@ -194,4 +194,36 @@ public class DelegateStatement<S extends Statement, C extends Connection>
     public boolean isCloseOnCompletion() throws SQLException {
         return statement.isCloseOnCompletion();
     }
+
+    public long getLargeUpdateCount() throws SQLException {
+        return statement.getLargeUpdateCount();
+    }
+
+    public void setLargeMaxRows(long max) throws SQLException {
+        statement.setLargeMaxRows(max);
+    }
+
+    public long getLargeMaxRows() throws SQLException {
+        return statement.getLargeMaxRows();
+    }
+
+    public long[] executeLargeBatch() throws SQLException {
+        return statement.executeLargeBatch();
+    }
+
+    public long executeLargeUpdate(String sql) throws SQLException {
+        return statement.executeLargeUpdate(sql);
+    }
+
+    public long executeLargeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+        return statement.executeLargeUpdate(sql, autoGeneratedKeys);
+    }
+
+    public long executeLargeUpdate(String sql, int[] columnIndexes) throws SQLException {
+        return statement.executeLargeUpdate(sql, columnIndexes);
+    }
+
+    public long executeLargeUpdate(String sql, String[] columnNames) throws SQLException {
+        return statement.executeLargeUpdate(sql, columnNames);
+    }
 }
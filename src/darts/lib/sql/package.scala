@@ -9,8 +9,11 @@ package object sql {
     type PreparedStatement = java.sql.PreparedStatement
     type DataSource = javax.sql.DataSource
 
+    type ParameterType[T] = jdbc.ParameterType[T]
     type Type[T] = jdbc.Type[T]
     type TypeDecorator[S, T] = jdbc.TypeDecorator[S, T]
+    type BinaryStream = jdbc.BinaryStream
+    type Deadline = jdbc.Deadline
 
     type Slot[T] = jdbc.Slot[T]
     type Bindings = jdbc.Bindings
@@ -21,28 +24,72 @@ package object sql {
     type Query[T] = jdbc.Query[T]
     type Insert[T] = jdbc.Insert[T]
     type SimpleQuery[T] = jdbc.SimpleQuery[T]
+    type DecodedQuery[T] = jdbc.DecodedQuery[T]
+    type LazyQuery = jdbc.LazyQuery
+    type LazyRow = jdbc.LazyRow
+    type RowDecoder[T] = jdbc.RowDecoder[T]
     type BasicQuery[T] = jdbc.BasicQuery[T]
     type SimpleInsert[T] = jdbc.SimpleInsert[T]
     type SimpleAction = jdbc.SimpleAction
+    type BulkInsert = jdbc.BulkInsert
+    type EncodedAction[T] = jdbc.EncodedAction[T]
+    type RowEncoder[T] = jdbc.RowEncoder[T]
     type Column[T] = jdbc.Column[T]
+    type KeyPart[T, K] = jdbc.KeyPart[T, K]
+    type KeysetQuery[T] = jdbc.KeysetQuery[T]
     type DeferredResult[T] = jdbc.DeferredResult[T]
+    type StatementResult[T] = jdbc.StatementResult[T]
     type Action = jdbc.Action
     type Session = jdbc.Session
     type SessionFactory = jdbc.SessionFactory
     type DataSourceSessionFactory = jdbc.DataSourceSessionFactory
+    type RoutingSessionFactory = jdbc.RoutingSessionFactory
+    type StatementInterceptor = jdbc.StatementInterceptor
+    type PlanCapture = jdbc.PlanCapture
+    type TemplateRegistry = jdbc.TemplateRegistry
+    type MetaDataCache = jdbc.MetaDataCache
+    type ColumnLayout = jdbc.ColumnLayout
+    type GroupCommitWriter = jdbc.GroupCommitWriter
+    type WriteBehindSink = jdbc.WriteBehindSink
+    type JournalCodec[T] = jdbc.JournalCodec[T]
+    type LongHashSet = jdbc.LongHashSet
+    type LongHashMap[V] = jdbc.LongHashMap[V]
+    type Aggregator[-T, A, +R] = jdbc.Aggregator[T, A, R]
+    type ShardedSessionFactory[K] = jdbc.ShardedSessionFactory[K]
+    type RetryPolicy = jdbc.RetryPolicy
+    type TransactionRunner = jdbc.TransactionRunner
     type AdapterKey[F, T <: AnyRef] = jdbc.AdapterKey[F, T]
     type AdapterCache[F] = jdbc.AdapterCache[F]
     type Adaptable[F] = jdbc.Adaptable[F]
 
     val Type = jdbc.Type
+    val BinaryStream = jdbc.BinaryStream
+    val Deadline = jdbc.Deadline
+    val PlanCapture = jdbc.PlanCapture
+    val TemplateRegistry = jdbc.TemplateRegistry
+    val ColumnLayout = jdbc.ColumnLayout
+    val WriteBehindSink = jdbc.WriteBehindSink
+    val JournalCodec = jdbc.JournalCodec
+    val Aggregator = jdbc.Aggregator
+    val StatementInterceptor = jdbc.StatementInterceptor
+    val Binary = jdbc.Binary
     val Slot = jdbc.Slot
     val Bindings = jdbc.Bindings
     val Fragment = jdbc.Fragment
     val Column = jdbc.Column
     val SimpleQuery = jdbc.SimpleQuery
+    val DecodedQuery = jdbc.DecodedQuery
+    val LazyQuery = jdbc.LazyQuery
+    val RowDecoder = jdbc.RowDecoder
     val SimpleInsert = jdbc.SimpleInsert
     val SimpleAction = jdbc.SimpleAction
+    val BulkInsert = jdbc.BulkInsert
+    val EncodedAction = jdbc.EncodedAction
+    val RowEncoder = jdbc.RowEncoder
     val Session = jdbc.Session
+    val KeyPart = jdbc.KeyPart
+    val KeysetQuery = jdbc.KeysetQuery
+    val RetryPolicy = jdbc.RetryPolicy
 
     val QueryUtilities = jdbc.Utilities
 
@@ -55,6 +102,15 @@ package object sql {
     def slot[T](name: String)(implicit descriptor: Type[T]): Slot[T] =
         Slot(name, descriptor)
 
+    def listSlot[T](name: String)(implicit element: Type[T]): Slot[Seq[T]] =
+        Slot(name, Type.inList(element))
+
+    def arraySlot[T](name: String)(implicit element: jdbc.Primitive[T]): Slot[Seq[T]] =
+        Slot(name, Type.sqlArray(element))
+
+    def arraySlot[T](name: String, typeName: String)(implicit element: jdbc.Primitive[T]): Slot[Seq[T]] =
+        Slot(name, Type.sqlArrayOf(typeName)(element))
+
     def constant[T](value: T)(implicit descriptor: Type[T]): Constant[T] =
         Constant(Some(value), descriptor)
 
@@ -0,0 +1,84 @@
+package darts.lib.sql.jdbc
+
+import java.lang.reflect.{InvocationHandler, InvocationTargetException, Method, Proxy}
+import java.sql.{Connection, DriverManager}
+
+import scala.collection.mutable.ArrayBuffer
+
+import org.scalatest.FunSuite
+
+class BulkInsertSuite extends FunSuite {
+
+    private val Id = Slot("id", Type.Int)
+    private val Name = Slot("name", Type.String)
+
+    private def insert(maxParameters: Int, maxRows: Int): BulkInsert =
+        new BulkInsert(TextFrag("INSERT INTO t (id, name) VALUES "),
+            Fragment.concatenate(TextFrag("("), Id, TextFrag(", "), Name, TextFrag(")")),
+            maxParameters, maxRows)
+
+    private def rows(count: Int): Iterator[Bindings] =
+        (1 to count).iterator.map(i => Bindings(Bindings.Binding(Id, Some(i)), Bindings.Binding(Name, Some("name-" + i))))
+
+    /**
+      * Runs `bulk` for `count` rows against H2, and returns the number
+      * of rows of each statement prepared, and the ids inserted.
+      */
+
+    private def shapes(bulk: BulkInsert, count: Int): (List[Int], List[Int]) = {
+        val connection = DriverManager.getConnection("jdbc:h2:mem:")
+        try {
+            val stmt = connection.createStatement()
+            try stmt.execute("CREATE TABLE t (id INT PRIMARY KEY, name VARCHAR(100))")
+            finally stmt.close()
+            val prepared = new ArrayBuffer[Int]
+            val recording = Proxy.newProxyInstance(getClass.getClassLoader, Array[Class[_]](classOf[Connection]), new InvocationHandler {
+                def invoke(proxy: AnyRef, method: Method, args: Array[AnyRef]): AnyRef = {
+                    if (method.getName == "prepareStatement") prepared += args(0).asInstanceOf[String].count(_ == '?') / 2
+                    try method.invoke(connection, args: _*)
+                    catch {
+                        case e: InvocationTargetException => throw e.getCause
+                    }
+                }
+            }).asInstanceOf[Connection]
+            assertResult(count)(bulk.execute(recording, rows(count)))
+            val rs = connection.createStatement().executeQuery("SELECT id FROM t ORDER BY id")
+            (prepared.toList, Iterator.continually(rs).takeWhile(_.next).map(_.getInt(1)).toList)
+        } finally
+            connection.close()
+    }
+
+    test("rows per statement respect both the parameter and the row limit") {
+        assertResult(3)(insert(7, 1000).rowsPerStatement)
+        assertResult(4)(insert(8, 1000).rowsPerStatement)
+        assertResult(4)(insert(9, 1000).rowsPerStatement)
+        assertResult(4)(insert(32767, 4).rowsPerStatement)
+        assertResult(4)(insert(8, 4).rowsPerStatement)
+        assertResult(1)(insert(1, 1000).rowsPerStatement)
+    }
+
+    test("full chunks share a single statement") {
+        assertResult((List(4), (1 to 12).toList))(shapes(insert(8, 1000), 12))
+        assertResult((List(4), (1 to 8).toList))(shapes(insert(32767, 4), 8))
+    }
+
+    test("a final chunk of one row is sent on its own") {
+        assertResult((List(4, 1), (1 to 5).toList))(shapes(insert(8, 1000), 5))
+        assertResult((List(3, 1), (1 to 4).toList))(shapes(insert(7, 1000), 4))
+        assertResult((List(1), List(1)))(shapes(insert(32767, 4), 1))
+    }
+
+    test("a final chunk of 2^k+1 rows is split into powers of two") {
+        assertResult((List(16, 8, 1), (1 to 25).toList))(shapes(insert(32767, 16), 25))
+        assertResult((List(4, 1), (1 to 5).toList))(shapes(insert(32767, 8), 5))
+        assertResult((List(2, 1), (1 to 3).toList))(shapes(insert(8, 1000), 3))
+    }
+
+    test("a final chunk one row short of a full one uses all smaller powers of two") {
+        assertResult((List(16, 8, 4, 2, 1), (1 to 31).toList))(shapes(insert(32767, 16), 31))
+    }
+
+    test("no statement is prepared for no rows") {
+        assertResult((Nil, Nil))(shapes(insert(32767, 16), 0))
+    }
+}
@@ -0,0 +1,74 @@
+package darts.lib.sql.jdbc
+
+import org.scalatest.FunSuite
+
+class CursorSuite extends FunSuite {
+
+    private final class SeqCursor[T](values: Seq[T]) extends Cursor[T] {
+
+        private val it = values.iterator
+        private var current: Option[T] = None
+        var advanced: Int = 0
+
+        def next: Boolean = {
+            advanced += 1
+            current = if (it.hasNext) Some(it.next()) else None
+            current.isDefined
+        }
+
+        def get: T = current.getOrElse(throw new IllegalStateException)
+    }
+
+    private def drain[T](cursor: Cursor[T]): List[T] = {
+        val buffer = List.newBuilder[T]
+        while (cursor.next) buffer += cursor.get
+        buffer.result()
+    }
+
+    test("merge yields all elements in ascending order") {
+        val merged = Cursor.merge(Seq(new SeqCursor(Seq(1, 4, 7)), new SeqCursor(Seq(2, 5, 8, 9)), new SeqCursor(Seq(3, 6))))
+        assertResult(List(1, 2, 3, 4, 5, 6, 7, 8, 9))(drain(merged))
+    }
+
+    test("merge yields equal elements in the order of the cursors") {
+        val ordering = Ordering.by[(Int, String), Int](_._1)
+        val merged = Cursor.merge(Seq(
+            new SeqCursor(Seq(1 -> "a", 2 -> "a")),
+            new SeqCursor(Seq(1 -> "b", 2 -> "b")),
+            new SeqCursor(Seq(1 -> "c"))))(ordering)
+        assertResult(List(1 -> "a", 1 -> "b", 1 -> "c", 2 -> "a", 2 -> "b"))(drain(merged))
+    }
+
+    test("merge handles empty cursors") {
+        assertResult(Nil)(drain(Cursor.merge(Seq.empty[Cursor[Int]])))
+        assertResult(Nil)(drain(Cursor.merge(Seq(new SeqCursor(Seq.empty[Int]), new SeqCursor(Seq.empty[Int])))))
+        assertResult(List(1, 2))(drain(Cursor.merge(Seq(new SeqCursor(Seq.empty[Int]), new SeqCursor(Seq(1, 2))))))
+    }
+
+    test("merge advances a cursor only after its element has been yielded") {
+        val a = new SeqCursor(Seq(1, 2, 3))
+        val b = new SeqCursor(Seq(10, 20))
+        val merged = Cursor.merge(Seq(a, b))
+        assert(merged.next)
+        assertResult(1)(merged.get)
+        assertResult(1)(a.advanced)
+        assertResult(1)(b.advanced)
+        assert(merged.next)
+        assertResult(2)(merged.get)
+        assertResult(2)(a.advanced)
+        assertResult(1)(b.advanced)
+    }
+
+    test("merge rejects get before next and after exhaustion") {
+        val merged = Cursor.merge(Seq(new SeqCursor(Seq(1)), new SeqCursor(Seq(2))))
+        intercept[IllegalStateException](merged.get)
+        assertResult(List(1, 2))(drain(merged))
+        assert(!merged.next)
+        intercept[IllegalStateException](merged.get)
+    }
+
+    test("concat yields the cursors one after the other") {
+        val concatenated = Cursor.concat(Seq(new SeqCursor(Seq(1, 2)), new SeqCursor(Seq.empty[Int]), new SeqCursor(Seq(3))))
+        assertResult(List(1, 2, 3))(drain(concatenated))
+    }
+}
@@ -0,0 +1,126 @@
+package darts.lib.sql.jdbc
+
+import java.sql.{Connection, DriverManager, SQLException}
+import java.util.concurrent.atomic.AtomicInteger
+
+import scala.concurrent.{Await, Future}
+import scala.concurrent.duration._
+
+import org.scalatest.FunSuite
+
+class GroupCommitWriterSuite extends FunSuite {
+
+    private val Id = Slot("id", Type.Int)
+    private val Insert = SimpleAction(new Template("INSERT INTO t (id) VALUES (?)", Seq(Id)))
+    private val Bump = SimpleAction(new Template("UPDATE counter SET n = n + 1", Seq()))
+
+    private val databases = new AtomicInteger
+
+    private def database(): String = {
+        val url = "jdbc:h2:mem:group" + databases.incrementAndGet() + ";DB_CLOSE_DELAY=-1"
+        val connection = DriverManager.getConnection(url)
+        try {
+            val stmt = connection.createStatement()
+            try {
+                stmt.execute("CREATE TABLE t (id INT PRIMARY KEY)")
+                stmt.execute("CREATE TABLE counter (n INT)")
+                stmt.execute("INSERT INTO counter VALUES (0)")
+            } finally
+                stmt.close()
+        } finally
+            connection.close()
+        url
+    }
+
+    private def factory(url: String): SessionFactory =
+        new BasicSessionFactory {
+            protected def openConnection: Connection = DriverManager.getConnection(url)
+        }
+
+    private def ids(url: String): List[Int] = {
+        val connection = DriverManager.getConnection(url)
+        try {
+            val rs = connection.createStatement().executeQuery("SELECT id FROM t ORDER BY id")
+            Iterator.continually(rs).takeWhile(_.next).map(_.getInt(1)).toList
+        } finally
+            connection.close()
+    }
+
+    private def await[T](future: Future[T]): T =
+        Await.result(future, 10.seconds)
+
+    test("submissions of many threads are all committed") {
+        val url = database()
+        val writer = new GroupCommitWriter(factory(url), maxBatch = 16, maxDelay = 5L)
+        try {
+            val counts = new AtomicInteger
+            val threads = (0 until 8).map { t =>
+                new Thread(new Runnable {
+                    def run(): Unit =
+                        (1 to 25).foreach(i => counts.addAndGet(await(writer.submit(Insert, Id(t * 25 + i)))))
+                })
+            }
+            threads.foreach(_.start())
+            threads.foreach(_.join())
+            assertResult(200)(counts.get)
+        } finally
+            writer.close()
+        assertResult((1 to 200).toList)(ids(url))
+    }
+
+    test("consecutive submissions of different templates keep their order") {
+        val url = database()
+        val writer = new GroupCommitWriter(factory(url), maxDelay = 50L)
+        try {
+            val futures = List(writer.submit(Insert, Id(1)), writer.submit(Bump), writer.submit(Bump), writer.submit(Insert, Id(2)))
+            assertResult(List(1, 1, 1, 1))(futures.map(await(_)))
+        } finally
+            writer.close()
+        assertResult(List(1, 2))(ids(url))
+    }
+
+    test("a failing submission fails on its own") {
+        val url = database()
+        val writer = new GroupCommitWriter(factory(url), maxDelay = 50L)
+        try {
+            val futures = List(1, 2, 1, 3).map(i => writer.submit(Insert, Id(i)))
+            assertResult(1)(await(futures(0)))
+            assertResult(1)(await(futures(1)))
+            intercept[SQLException](await(futures(2)))
+            assertResult(1)(await(futures(3)))
+        } finally
+            writer.close()
+        assertResult(List(1, 2, 3))(ids(url))
+    }
+
+    test("pending submissions are executed on close, later ones rejected") {
+        val url = database()
+        val writer = new GroupCommitWriter(factory(url), maxDelay = 1000L)
+        val future = writer.submit(Insert, Id(1))
+        writer.close()
+        assertResult(1)(await(future))
+        intercept[IllegalStateException](writer.submit(Insert, Id(2)))
+        assertResult(List(1))(ids(url))
+    }
+
+    test("the death of the writer thread is reported to submitters") {
+        val url = database()
+        val writer = new GroupCommitWriter(factory(url))
+        try {
+            val threads = Thread.getAllStackTraces.keySet.toArray(new Array[Thread](0))
+            threads.filter(_.getName == "darts-sql-group-commit").foreach(_.interrupt())
+            var failure: IllegalStateException = null
+            val until = System.nanoTime + 10.seconds.toNanos
+            while ((failure eq null) && System.nanoTime < until) {
+                try await(writer.submit(Insert, Id(1)))
+                catch {
+                    case e: IllegalStateException => failure = e
+                    case _: InterruptedException => ()
+                }
+            }
+            assert(failure ne null)
+            assert(failure.getCause.isInstanceOf[InterruptedException])
+        } finally
+            writer.close()
+    }
+}
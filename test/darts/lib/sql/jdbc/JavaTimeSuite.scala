@@ -0,0 +1,80 @@
+package darts.lib.sql.jdbc
+
+import java.sql.{Connection, DriverManager}
+import java.util.TimeZone
+
+import org.scalatest.FunSuite
+
+class JavaTimeSuite extends FunSuite {
+
+    private def withConnection[U](fn: (Connection) => U): U = {
+        val connection = DriverManager.getConnection("jdbc:h2:mem:")
+        try {
+            val stmt = connection.createStatement()
+            try stmt.execute("CREATE TABLE t (id INT, d DATE, ts TIMESTAMP, tm TIME, i TIMESTAMP)")
+            finally stmt.close()
+            fn(connection)
+        } finally
+            connection.close()
+    }
+
+    private def roundTrip[T](connection: Connection, id: Int, column: String, descriptor: Type[T], value: Option[T]): (Option[T], Option[T]) = {
+        val insert = connection.prepareStatement("INSERT INTO t (id, " + column + ") VALUES (?, ?)")
+        try {
+            insert.setInt(1, id)
+            descriptor.bindValue(insert, 2, value)
+            insert.executeUpdate()
+        } finally
+            insert.close()
+        val select = connection.prepareStatement("SELECT " + column + " FROM t WHERE id = ?")
+        try {
+            select.setInt(1, id)
+            val rs = select.executeQuery()
+            try {
+                assert(rs.next)
+                (descriptor.readValue(rs, column), descriptor.readValue(rs, 1))
+            } finally
+                rs.close()
+        } finally
+            select.close()
+    }
+
+    private def inZone[U](zone: String)(body: => U): U = {
+        val saved = TimeZone.getDefault
+        TimeZone.setDefault(TimeZone.getTimeZone(zone))
+        try body finally TimeZone.setDefault(saved)
+    }
+
+    test("java.time values survive a round trip through a pre-JDBC 4.2 driver") {
+        withConnection { connection =>
+            val date = java.time.LocalDate.of(2016, 5, 26)
+            val dateTime = java.time.LocalDateTime.of(2016, 5, 26, 13, 14, 15, 123000000)
+            val time = java.time.LocalTime.of(13, 14, 15)
+            val instant = java.time.Instant.parse("2016-05-26T11:14:15.123Z")
+            assertResult((Some(date), Some(date)))(roundTrip(connection, 1, "d", Type.LocalDate, Some(date)))
+            assertResult((Some(dateTime), Some(dateTime)))(roundTrip(connection, 2, "ts", Type.LocalDateTime, Some(dateTime)))
+            assertResult((Some(time), Some(time)))(roundTrip(connection, 3, "tm", Type.LocalTime, Some(time)))
+            assertResult((Some(instant), Some(instant)))(roundTrip(connection, 4, "i", Type.Instant, Some(instant)))
+        }
+    }
+
+    test("NULL is read as None") {
+        withConnection { connection =>
+            assertResult((None, None))(roundTrip(connection, 1, "d", Type.LocalDate, None))
+            assertResult((None, None))(roundTrip(connection, 2, "ts", Type.LocalDateTime, None))
+            assertResult((None, None))(roundTrip(connection, 3, "tm", Type.LocalTime, None))
+            assertResult((None, None))(roundTrip(connection, 4, "i", Type.Instant, None))
+        }
+    }
+
+    test("local values keep their fields in a time zone other than UTC") {
+        inZone("Europe/Berlin") {
+            withConnection { connection =>
+                val dateTime = java.time.LocalDateTime.of(2016, 1, 2, 23, 30)
+                val date = java.time.LocalDate.of(2016, 1, 2)
+                assertResult((Some(dateTime), Some(dateTime)))(roundTrip(connection, 1, "ts", Type.LocalDateTime, Some(dateTime)))
+                assertResult((Some(date), Some(date)))(roundTrip(connection, 2, "d", Type.LocalDate, Some(date)))
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package darts.lib.sql.jdbc
+
+import java.sql.{Connection, DriverManager}
+
+import org.scalatest.FunSuite
+
+class KeysetQuerySuite extends FunSuite {
+
+    private val MinId = Slot("min", Type.Int)
+
+    /**
+      * Rows `(grp, id)` for ids 1 to 23, in groups of 5 consecutive
+      * ids, so that the first key part alone is not unique.
+      */
+
+    private def withConnection[U](fn: (Connection) => U): U = {
+        val connection = DriverManager.getConnection("jdbc:h2:mem:")
+        try {
+            val stmt = connection.createStatement()
+            try stmt.execute("CREATE TABLE t AS SELECT (X - 1) / 5 AS grp, X AS id FROM SYSTEM_RANGE(1, 23)")
+            finally stmt.close()
+            fn(connection)
+        } finally
+            connection.close()
+    }
+
+    private def query(pageSize: Int, descending: Boolean): KeysetQuery[(Int, Int)] = {
+        val grp = KeyPart[(Int, Int), Int]("grp", Type.Int, _._1, descending)
+        val id = KeyPart[(Int, Int), Int]("id", Type.Int, _._2, descending)
+        KeysetQuery(Fragment.concatenate(TextFrag("SELECT grp, id FROM t WHERE id > "), MinId), pageSize, grp, id) { rs =>
+            (rs.getInt("grp"), rs.getInt("id"))
+        }
+    }
+
+    private val all = Bindings(Bindings.Binding(MinId, Some(0)))
+
+    test("pages follow each other in key order without gaps or repetitions") {
+        withConnection { connection =>
+            val pages = query(4, false).pages(connection, all).toList
+            assertResult(List(4, 4, 4, 4, 4, 3))(pages.map(_.size))
+            assertResult((1 to 23).toList)(pages.flatten.map(_._2))
+        }
+    }
+
+    test("descending keys traverse the rows backwards") {
+        withConnection { connection =>
+            val pages = query(6, true).pages(connection, all).toList
+            assertResult(List(6, 6, 6, 5))(pages.map(_.size))
+            assertResult((23 to 1 by -1).toList)(pages.flatten.map(_._2))
+        }
+    }
+
+    test("a result filling the last page exactly ends with that page") {
+        withConnection { connection =>
+            val pages = query(5, false).pages(connection, Bindings(Bindings.Binding(MinId, Some(3)))).toList
+            assertResult(List(5, 5, 5, 5))(pages.map(_.size))
+            assertResult((4 to 23).toList)(pages.flatten.map(_._2))
+        }
+    }
+
+    test("an empty result has no pages") {
+        withConnection { connection =>
+            assert(query(5, false).pages(connection, Bindings(Bindings.Binding(MinId, Some(23)))).isEmpty)
+        }
+    }
+
+    test("the cursor yields the rows of all pages") {
+        withConnection { connection =>
+            val cursor = query(4, false).cursor(connection, all)
+            val ids = Iterator.continually(cursor).takeWhile(_.next).map(_.get._2).toList
+            assertResult((1 to 23).toList)(ids)
+            assert(!cursor.next)
+        }
+    }
+
+    test("the statement for the following pages does not depend on the page") {
+        val keyset = query(4, false)
+        assertResult("SELECT * FROM (SELECT grp, id FROM t WHERE id > ?) keyset_page WHERE (grp > ?) OR (grp = ? AND id > ?) ORDER BY grp, id LIMIT 4")(keyset.nextPage.text)
+    }
+}
@@ -0,0 +1,73 @@
+package darts.lib.sql.jdbc
+
+import java.sql.DriverManager
+
+import org.scalatest.FunSuite
+
+class TemplateSuite extends FunSuite {
+
+    private val Ids = Slot("ids", Type.inList(Type.Int))
+    private val Name = Slot("name", Type.String)
+
+    private def expanded(text: String, ids: Seq[Int]): String =
+        new Template(text, Seq(Ids)).textFor(Bindings(Bindings.Binding(Ids, Some(ids))))
+
+    test("list markers are expanded to the bucket size") {
+        assertResult("x IN (?)")(expanded("x IN (?)", Seq(1)))
+        assertResult("x IN (?, ?)")(expanded("x IN (?)", Seq(1, 2)))
+        assertResult("x IN (?, ?, ?, ?)")(expanded("x IN (?)", Seq(1, 2, 3)))
+        assertResult("x IN (?, ?, ?, ?, ?, ?, ?, ?)")(expanded("x IN (?)", Seq(1, 2, 3, 4, 5)))
+    }
+
+    test("only the markers of expanding substitutions are expanded") {
+        val template = new Template("a = ? AND x IN (?)", Seq(Name, Ids))
+        val bindings = Bindings(Bindings.Binding(Name, Some("n")), Bindings.Binding(Ids, Some(Seq(1, 2))))
+        assertResult("a = ? AND x IN (?, ?)")(template.textFor(bindings))
+    }
+
+    test("markers in literals, quoted identifiers and comments are left alone") {
+        assertResult("'?' \"?\" x IN (?, ?)")(expanded("'?' \"?\" x IN (?)", Seq(1, 2)))
+        assertResult("-- ?\nx IN (?, ?)")(expanded("-- ?\nx IN (?)", Seq(1, 2)))
+        assertResult("/* ? */ x IN (?, ?)")(expanded("/* ? */ x IN (?)", Seq(1, 2)))
+        assertResult("/**/ x IN (?, ?)")(expanded("/**/ x IN (?)", Seq(1, 2)))
+    }
+
+    test("a slash directly after the comment opener does not close the comment") {
+        assertResult("/*/ ? */ x IN (?, ?)")(expanded("/*/ ? */ x IN (?)", Seq(1, 2)))
+    }
+
+    test("mismatched marker counts are rejected") {
+        intercept[IllegalStateException](expanded("x IN (?) OR y IN (?)", Seq(1, 2)))
+        intercept[IllegalStateException](expanded("'?'", Seq(1, 2)))
+    }
+
+    test("empty and oversized lists are rejected") {
+        intercept[IllegalArgumentException](expanded("x IN (?)", Seq()))
+        intercept[IllegalArgumentException](expanded("x IN (?)", 1 to (Type.InList.MaxBucket + 1)))
+        assertResult(Type.InList.MaxBucket)(Type.InList.bucket(Type.InList.MaxBucket))
+        assertResult(Type.InList.MaxBucket)(Type.InList.bucket(513))
+    }
+
+    test("surplus markers are bound to the last element") {
+        val connection = DriverManager.getConnection("jdbc:h2:mem:")
+        try {
+            val create = connection.createStatement()
+            try create.execute("CREATE TABLE t AS SELECT X AS id FROM SYSTEM_RANGE(1, 10)")
+            finally create.close()
+            val template = new Template("SELECT id FROM t WHERE id IN (?) ORDER BY id", Seq(Ids))
+            val bindings = Bindings(Bindings.Binding(Ids, Some(Seq(2, 3, 5))))
+            val stmt = connection.prepareStatement(template.textFor(bindings))
+            try {
+                Ids.bindParameter(stmt, 1, bindings)
+                val rs = stmt.executeQuery()
+                try {
+                    val ids = Iterator.continually(rs).takeWhile(_.next).map(_.getInt(1)).toList
+                    assertResult(List(2, 3, 5))(ids)
+                } finally
+                    rs.close()
+            } finally
+                stmt.close()
+        } finally
+            connection.close()
+    }
+}
@@ -0,0 +1,171 @@
+package darts.lib.sql.jdbc
+
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.{Files, Path, StandardOpenOption}
+import java.sql.{Connection, DriverManager, SQLException}
+import java.util.concurrent.atomic.AtomicInteger
+
+import org.scalatest.FunSuite
+
+class WriteBehindSinkSuite extends FunSuite {
+
+    private val Id = Slot("id", Type.Int)
+    private val Name = Slot("name", Type.String)
+    private val Insert = new Template("INSERT INTO t (id, name) VALUES (?, ?)", Seq(Id, Name))
+
+    private val databases = new AtomicInteger
+
+    private def database(): String = {
+        val url = "jdbc:h2:mem:sink" + databases.incrementAndGet() + ";DB_CLOSE_DELAY=-1"
+        val connection = DriverManager.getConnection(url)
+        try {
+            val stmt = connection.createStatement()
+            try stmt.execute("CREATE TABLE t (id INT PRIMARY KEY, name VARCHAR(100))")
+            finally stmt.close()
+        } finally
+            connection.close()
+        url
+    }
+
+    private def factory(url: String): SessionFactory =
+        new BasicSessionFactory {
+            protected def openConnection: Connection = DriverManager.getConnection(url)
+        }
+
+    private val unavailable: SessionFactory =
+        new BasicSessionFactory {
+            protected def openConnection: Connection = throw new SQLException("unavailable", "08001")
+        }
+
+    private def ids(url: String): List[Int] = {
+        val connection = DriverManager.getConnection(url)
+        try {
+            val rs = connection.createStatement().executeQuery("SELECT id FROM t ORDER BY id")
+            Iterator.continually(rs).takeWhile(_.next).map(_.getInt(1)).toList
+        } finally
+            connection.close()
+    }
+
+    private def withJournal[U](fn: (Path) => U): U = {
+        val path = Files.createTempFile("journal", ".wbs")
+        try fn(path) finally Files.delete(path)
+    }
+
+    private def submitAll(sink: WriteBehindSink, range: Range): Unit =
+        range.foreach(i => sink.submit(Bindings.Binding(Id, Some(i)), Bindings.Binding(Name, Some("name-" + i))))
+
+    test("submitted records are written to the database") {
+        val url = database()
+        withJournal { path =>
+            val sink = new WriteBehindSink(Insert, factory(url), path, batchSize = 3)
+            try {
+                submitAll(sink, 1 to 10)
+                assert(sink.flush(10000L))
+            } finally
+                sink.close()
+            assertResult((1 to 10).toList)(ids(url))
+        }
+    }
+
+    test("flush with a timeout gives up while the database is unavailable") {
+        withJournal { path =>
+            val sink = new WriteBehindSink(Insert, unavailable, path, flushInterval = 10L)
+            try {
+                submitAll(sink, 1 to 2)
+                assert(!sink.flush(100L))
+            } finally
+                sink.close()
+        }
+    }
+
+    test("records left in the journal are replayed by the next sink") {
+        val url = database()
+        withJournal { path =>
+            val first = new WriteBehindSink(Insert, unavailable, path, flushInterval = 10L)
+            submitAll(first, 1 to 5)
+            first.close()
+            val second = new WriteBehindSink(Insert, factory(url), path)
+            try {
+                assertResult(5)(second.recovered)
+                assert(second.flush(10000L))
+            } finally
+                second.close()
+            assertResult((1 to 5).toList)(ids(url))
+            val third = new WriteBehindSink(Insert, unavailable, path)
+            try assertResult(0)(third.recovered)
+            finally third.close()
+        }
+    }
+
+    test("a record with a bad checksum ends the journal") {
+        val url = database()
+        withJournal { path =>
+            val first = new WriteBehindSink(Insert, unavailable, path, flushInterval = 10L)
+            submitAll(first, 1 to 3)
+            first.close()
+            val channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)
+            try {
+                val length = ByteBuffer.allocate(4)
+                channel.read(length, 64L)
+                val second = 64L + 8 + length.getInt(0)
+                val byte = ByteBuffer.allocate(1)
+                channel.read(byte, second + 8)
+                byte.put(0, (byte.get(0) ^ 0xff).toByte)
+                byte.rewind()
+                channel.write(byte, second + 8)
+            } finally
+                channel.close()
+            val sink = new WriteBehindSink(Insert, factory(url), path)
+            try {
+                assertResult(1)(sink.recovered)
+                assert(sink.flush(10000L))
+            } finally
+                sink.close()
+            assertResult(List(1))(ids(url))
+        }
+    }
+
+    test("the journal is rewound once the flusher has caught up") {
+        val url = database()
+        withJournal { path =>
+            val sink = new WriteBehindSink(Insert, factory(url), path, capacity = 512, flushInterval = 10L)
+            try {
+                (0 until 20).foreach { round =>
+                    submitAll(sink, (round * 10 + 1) to (round * 10 + 10))
+                    assert(sink.flush(10000L))
+                }
+            } finally
+                sink.close()
+            assertResult((1 to 200).toList)(ids(url))
+        }
+    }
+
+    test("submissions block until the flusher has made room") {
+        val url = database()
+        withJournal { path =>
+            val sink = new WriteBehindSink(Insert, factory(url), path, capacity = 512, flushInterval = 10L)
+            try {
+                submitAll(sink, 1 to 100)
+                assert(sink.flush(10000L))
+            } finally
+                sink.close()
+            assertResult((1 to 100).toList)(ids(url))
+        }
+    }
+
+    test("the death of the flusher is reported to callers") {
+        withJournal { path =>
+            val sink = new WriteBehindSink(Insert, unavailable, path, flushInterval = 10L)
+            try {
+                submitAll(sink, 1 to 2)
+                val threads = Thread.getAllStackTraces.keySet.toArray(new Array[Thread](0))
+                threads.filter(_.getName == "darts-sql-write-behind").foreach(_.interrupt())
+                val e = intercept[IllegalStateException](sink.flush(10000L))
+                assert(e.getCause.isInstanceOf[InterruptedException])
+                intercept[IllegalStateException](submitAll(sink, 3 to 3))
+            } finally
+                sink.close()
+        }
+    }
+}